@@ -19,8 +19,17 @@ repositories {
         mavenCentral()
 }
 
+// 注入脚本的基准测试，与插件代码分开编译，运行时使用插件资源中的同一批脚本
+sourceSets {
+    create("benchmark") {
+        runtimeClasspath += sourceSets["main"].output
+    }
+}
+
 dependencies {
     implementation("com.google.code.gson:gson:2.10.1")
+    "benchmarkImplementation"("com.google.code.gson:gson:2.10.1")
+    testImplementation("junit:junit:4.13.2")
 }
 
 // Configure Gradle IntelliJ Plugin
@@ -56,5 +65,28 @@ tasks {
     publishPlugin {
         token.set(System.getenv("PUBLISH_TOKEN"))
     }
+
+    // 运行注入脚本的基准测试：BENCHMARK_CHROME=/path/to/chrome ./gradlew benchmark [-PupdateBaseline]
+    register<JavaExec>("benchmark") {
+        group = "verification"
+        description = "Runs the injected page scripts against synthetic pages in headless Chrome and compares with the baseline."
+        classpath = sourceSets["benchmark"].runtimeClasspath
+        mainClass.set("com.browser.ScriptBenchmark")
+        systemProperty("benchmark.output", layout.buildDirectory.file("benchmark/results.json").get().asFile.path)
+        systemProperty("benchmark.baseline", layout.projectDirectory.file("benchmark/baseline.json").asFile.path)
+        systemProperty("benchmark.updateBaseline", providers.gradleProperty("updateBaseline").isPresent)
+        providers.gradleProperty("benchmarkRuns").orNull?.let { systemProperty("benchmark.runs", it) }
+        providers.gradleProperty("benchmarkScenario").orNull?.let { systemProperty("benchmark.scenario", it) }
+        providers.gradleProperty("benchmarkTolerance").orNull?.let { systemProperty("benchmark.tolerance", it) }
+    }
+
+    // 对着本地 HTTP 服务检查磁盘缓存：./gradlew cacheBenchmark
+    register<JavaExec>("cacheBenchmark") {
+        group = "verification"
+        description = "Checks the HTTP disk cache against a local server and measures disk hit latency."
+        classpath = sourceSets["benchmark"].runtimeClasspath
+        mainClass.set("com.browser.DiskCacheBenchmark")
+        systemProperty("benchmark.cacheDir", layout.buildDirectory.dir("benchmark/http-cache").get().asFile.path)
+    }
     }
 }
@@ -0,0 +1,95 @@
+package com.browser;
+
+import java.util.List;
+
+/**
+ * 基准测试的一个场景：合成页面的节点数、同源 iframe 的嵌套层数，以及页面加载后连续插入节点的批次。
+ * <p>
+ * 页面内容完全由参数决定，不含随机成分，同一场景每次生成的页面都相同。
+ */
+record BenchmarkScenario(String name, int nodes, int iframeDepth, int iframesPerLevel, int stormBatches, int stormSize) {
+
+    static final List<BenchmarkScenario> ALL = List.of(
+            new BenchmarkScenario("nodes-1k", 1_000, 0, 0, 0, 0),
+            new BenchmarkScenario("nodes-10k", 10_000, 0, 0, 0, 0),
+            new BenchmarkScenario("nodes-100k", 100_000, 0, 0, 0, 0),
+            new BenchmarkScenario("nested-iframes", 2_000, 3, 2, 0, 0),
+            new BenchmarkScenario("mutation-storm", 5_000, 0, 0, 100, 200)
+    );
+
+    // 一张卡片包含的元素数量，见 appendCard
+    private static final int CARD_SIZE = 6;
+
+    static BenchmarkScenario find(String name) {
+        return ALL.stream().filter(scenario -> scenario.name.equals(name)).findFirst().orElse(null);
+    }
+
+    /**
+     * 场景的顶层页面，末尾加载测试脚本。
+     */
+    String page() {
+        StringBuilder html = new StringBuilder();
+        html.append("<!DOCTYPE html><html><head><meta charset=\"utf-8\"><title>").append(name).append("</title></head><body>");
+        appendContent(html, nodes);
+        if (iframeDepth > 0) {
+            appendFrames(html, iframeDepth);
+        }
+        html.append("<script>window.__benchmark = { scenario: '").append(name)
+                .append("', stormBatches: ").append(stormBatches)
+                .append(", stormSize: ").append(stormSize).append(" };</script>")
+                .append("<script src=\"/benchmark/harness.js\"></script>")
+                .append("</body></html>");
+        return html.toString();
+    }
+
+    /**
+     * 嵌套的 iframe 页面，depth 为还需要嵌套的层数。
+     */
+    String frame(int depth) {
+        StringBuilder html = new StringBuilder();
+        html.append("<!DOCTYPE html><html><head><meta charset=\"utf-8\"></head><body>");
+        appendContent(html, nodes / 2);
+        if (depth > 0) {
+            appendFrames(html, depth);
+        }
+        html.append("</body></html>");
+        return html.toString();
+    }
+
+    private void appendFrames(StringBuilder html, int depth) {
+        for (int i = 0; i < iframesPerLevel; i++) {
+            html.append("<iframe width=\"400\" height=\"300\" src=\"/frame/").append(name).append('/')
+                    .append(depth - 1).append("\"></iframe>");
+        }
+    }
+
+    /**
+     * 生成大约 count 个元素：白色背景的卡片、链接、广告位和普通文本，覆盖注入脚本处理的各类元素。
+     */
+    private static void appendContent(StringBuilder html, int count) {
+        int sections = Math.max(1, count / (CARD_SIZE * 20));
+        int cards = Math.max(1, count / CARD_SIZE);
+        for (int card = 0; card < cards; card++) {
+            if (card % (cards / sections + 1) == 0) {
+                if (card > 0) {
+                    html.append("</section>");
+                }
+                html.append("<section class=\"content-wrapper\">");
+            }
+            appendCard(html, card);
+        }
+        html.append("</section>");
+    }
+
+    private static void appendCard(StringBuilder html, int index) {
+        if (index % 25 == 0) {
+            html.append("<div class=\"ad-slot\" data-ad-id=\"").append(index).append("\"><span>ad</span></div>");
+        }
+        html.append("<div class=\"card\" style=\"background: #fff\">")
+                .append("<h3>Item ").append(index).append("</h3>")
+                .append("<p>Lorem ipsum <span>dolor</span> sit amet</p>")
+                .append("<div class=\"box\" style=\"background-color: rgb(250, 250, 250)\">")
+                .append("<a href=\"#").append(index).append("\" target=\"_blank\">link</a>")
+                .append("</div></div>");
+    }
+}
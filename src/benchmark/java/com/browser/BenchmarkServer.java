@@ -0,0 +1,124 @@
+package com.browser;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 基准测试用的本地 HTTP 服务：提供合成页面、注入脚本和测试脚本，并接收浏览器回传的测量结果。
+ * <p>
+ * 只监听本机回环地址，端口由系统分配。
+ * <ul>
+ *     <li>/scenario/{name}：场景的顶层页面</li>
+ *     <li>/frame/{name}/{depth}：场景中嵌套的 iframe 页面</li>
+ *     <li>/scripts/{file}：插件注入的脚本和样式表，与插件使用的是同一批资源</li>
+ *     <li>/benchmark/{file}：测试脚本</li>
+ *     <li>POST /result/{name}：测试脚本回传的结果</li>
+ * </ul>
+ */
+final class BenchmarkServer implements AutoCloseable {
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+    private final Map<String, CompletableFuture<String>> results = new ConcurrentHashMap<>();
+
+    BenchmarkServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.setExecutor(executor);
+        server.createContext("/scenario/", this::handleScenario);
+        server.createContext("/frame/", this::handleFrame);
+        server.createContext("/scripts/", exchange -> handleResource(exchange, "/scripts/"));
+        server.createContext("/benchmark/", exchange -> handleResource(exchange, "/benchmark/"));
+        server.createContext("/result/", this::handleResult);
+        server.start();
+    }
+
+    String url(String path) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + path;
+    }
+
+    /**
+     * 等待场景的下一次结果，需要在打开页面之前调用。
+     */
+    CompletableFuture<String> expectResult(String scenario) {
+        CompletableFuture<String> future = new CompletableFuture<>();
+        results.put(scenario, future);
+        return future;
+    }
+
+    private void handleScenario(HttpExchange exchange) throws IOException {
+        BenchmarkScenario scenario = BenchmarkScenario.find(lastSegment(exchange, 0));
+        if (scenario == null) {
+            send(exchange, 404, "text/plain", "Unknown scenario");
+            return;
+        }
+        send(exchange, 200, "text/html; charset=utf-8", scenario.page());
+    }
+
+    private void handleFrame(HttpExchange exchange) throws IOException {
+        BenchmarkScenario scenario = BenchmarkScenario.find(lastSegment(exchange, 1));
+        if (scenario == null) {
+            send(exchange, 404, "text/plain", "Unknown scenario");
+            return;
+        }
+        int depth = Integer.parseInt(lastSegment(exchange, 0));
+        send(exchange, 200, "text/html; charset=utf-8", scenario.frame(depth));
+    }
+
+    private void handleResource(HttpExchange exchange, String prefix) throws IOException {
+        String file = lastSegment(exchange, 0);
+        try (InputStream in = BenchmarkServer.class.getResourceAsStream(prefix + file)) {
+            if (in == null) {
+                send(exchange, 404, "text/plain", "Not found");
+                return;
+            }
+            String type = file.endsWith(".css") ? "text/css; charset=utf-8" : "text/javascript; charset=utf-8";
+            send(exchange, 200, type, new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    private void handleResult(HttpExchange exchange) throws IOException {
+        String body;
+        try (InputStream in = exchange.getRequestBody()) {
+            body = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        CompletableFuture<String> future = results.remove(lastSegment(exchange, 0));
+        if (future != null) {
+            future.complete(body);
+        }
+        send(exchange, 204, "text/plain", null);
+    }
+
+    // 路径倒数第 index + 1 段
+    private static String lastSegment(HttpExchange exchange, int index) {
+        String[] segments = exchange.getRequestURI().getPath().split("/");
+        return segments.length > index ? segments[segments.length - 1 - index] : "";
+    }
+
+    private static void send(HttpExchange exchange, int status, String type, String body) throws IOException {
+        byte[] bytes = body != null ? body.getBytes(StandardCharsets.UTF_8) : new byte[0];
+        exchange.getResponseHeaders().set("Content-Type", type);
+        exchange.getResponseHeaders().set("Cache-Control", "no-store");
+        exchange.sendResponseHeaders(status, bytes.length > 0 ? bytes.length : -1);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
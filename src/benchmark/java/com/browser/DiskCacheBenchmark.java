@@ -0,0 +1,302 @@
+package com.browser;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * 对着本地的 HTTP 服务检查 {@link HttpDiskCache}：新鲜条目从磁盘返回、过期条目用 304 重新验证、
+ * 固定页面不被淘汰并且在服务停止后仍能打开，同时测量从磁盘返回的耗时。
+ * <p>
+ * 网络请求用 JDK 的 HttpClient 代替插件里的 CefURLRequest，缓存本身的代码和插件完全相同。
+ * 任何一项检查不通过时以非零状态退出。
+ */
+public final class DiskCacheBenchmark {
+
+    // 从磁盘返回的中位耗时上限（毫秒）
+    private static final double MAX_DISK_HIT_MS = 20;
+    private static final int DISK_HIT_RUNS = 50;
+    private static final long TIMEOUT_SECONDS = 10;
+    // HttpClient 不允许设置的请求头
+    private static final Set<String> RESTRICTED_HEADERS = Set.of("connection", "content-length", "expect", "host", "upgrade");
+
+    private final List<String> failures = new ArrayList<>();
+    private final HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(2)).build();
+
+    public static void main(String[] args) throws Exception {
+        Path directory = Paths.get(System.getProperty("benchmark.cacheDir", "build/benchmark/http-cache"));
+        deleteRecursively(directory);
+        DiskCacheBenchmark benchmark = new DiskCacheBenchmark();
+        benchmark.run(directory);
+        if (!benchmark.failures.isEmpty()) {
+            System.err.println("Failed checks:");
+            benchmark.failures.forEach(failure -> System.err.println("  " + failure));
+            System.exit(1);
+        }
+        System.out.println("All disk cache checks passed");
+    }
+
+    private void run(Path directory) throws Exception {
+        ExecutorService io = Executors.newSingleThreadExecutor();
+        try (DocsServer server = new DocsServer()) {
+            HttpDiskCache cache = new HttpDiskCache(directory, 64 * 1024, io, (message, error) ->
+                    System.err.println(message + ": " + error));
+            awaitLoaded(cache);
+
+            String fresh = server.url("/fresh");
+            check("fresh first load", load(cache, fresh, null), HttpDiskCache.Source.NETWORK);
+            check("fresh repeat load", load(cache, fresh, null), HttpDiskCache.Source.DISK);
+            checkEquals("fresh requests", server.requests("/fresh"), 1);
+
+            String etag = server.url("/etag");
+            check("etag first load", load(cache, etag, null), HttpDiskCache.Source.NETWORK);
+            check("etag repeat load", load(cache, etag, null), HttpDiskCache.Source.REVALIDATED);
+            checkEquals("etag not modified", server.notModified("/etag"), 1);
+
+            String lastModified = server.url("/last-modified");
+            check("last-modified first load", load(cache, lastModified, null), HttpDiskCache.Source.NETWORK);
+            check("last-modified repeat load", load(cache, lastModified, null), HttpDiskCache.Source.REVALIDATED);
+
+            check("no-store first load", load(cache, server.url("/no-store"), null), HttpDiskCache.Source.NETWORK);
+            check("no-store repeat load", load(cache, server.url("/no-store"), null), HttpDiskCache.Source.NETWORK);
+
+            // 固定页面和它的资源，过期后也直接从磁盘返回
+            String page = server.url("/pinned");
+            String style = server.url("/pinned.css");
+            cache.pin(page);
+            check("pinned first load", load(cache, page, page), HttpDiskCache.Source.NETWORK);
+            check("pinned resource first load", load(cache, style, page), HttpDiskCache.Source.NETWORK);
+            check("pinned repeat load", load(cache, page, page), HttpDiskCache.Source.DISK);
+
+            List<Double> times = new ArrayList<>();
+            for (int i = 0; i < DISK_HIT_RUNS; i++) {
+                long start = System.nanoTime();
+                load(cache, page, page);
+                times.add((System.nanoTime() - start) / 1e6);
+            }
+            Collections.sort(times);
+            double median = times.get(times.size() / 2);
+            System.out.printf(Locale.ROOT, "pinned disk hit: median %.2f ms, max %.2f ms%n", median, times.get(times.size() - 1));
+            if (median > MAX_DISK_HIT_MS) {
+                failures.add("pinned disk hit median " + median + " ms > " + MAX_DISK_HIT_MS + " ms");
+            }
+
+            // 填满缓存，未固定的旧条目被淘汰，固定的保留
+            for (int i = 0; i < 40; i++) {
+                load(cache, server.url("/filler/" + i), null);
+            }
+            io.submit(() -> null).get();
+            if (cache.getTotalBytes() > 64 * 1024) {
+                failures.add("cache size " + cache.getTotalBytes() + " exceeds the limit");
+            }
+            int before = server.requests("/fresh");
+            load(cache, fresh, null);
+            checkEquals("evicted entry refetched", server.requests("/fresh"), before + 1);
+
+            // 服务停止后，固定页面和仍在缓存中的条目都能打开
+            server.stop();
+            check("pinned offline", load(cache, page, page), HttpDiskCache.Source.DISK);
+            check("pinned resource offline", load(cache, style, page), HttpDiskCache.Source.DISK);
+            check("cached entry offline", load(cache, server.url("/filler/39"), null), HttpDiskCache.Source.OFFLINE);
+            if (load(cache, server.url("/never-loaded"), null) != null) {
+                failures.add("uncached entry offline: expected no response");
+            }
+
+            // 重新打开缓存目录，固定页面仍然可以离线打开
+            io.submit(() -> null).get();
+            HttpDiskCache reopened = new HttpDiskCache(directory, 64 * 1024, io, (message, error) ->
+                    System.err.println(message + ": " + error));
+            awaitLoaded(reopened);
+            check("pinned offline after restart", load(reopened, page, page), HttpDiskCache.Source.DISK);
+        } finally {
+            io.shutdown();
+            io.awaitTermination(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+
+    private HttpDiskCache.Response load(HttpDiskCache cache, String url, String pageUrl) throws Exception {
+        CompletableFuture<HttpDiskCache.Response> result = new CompletableFuture<>();
+        cache.load(url, Map.of("Accept", "*/*"), pageUrl, this::fetch, result::complete);
+        return result.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    private void fetch(String url, Map<String, String> headers, HttpDiskCache.NetworkCallback callback) {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(url)).GET();
+        headers.forEach((name, value) -> {
+            if (!RESTRICTED_HEADERS.contains(name.toLowerCase(Locale.ROOT))) {
+                request.header(name, value);
+            }
+        });
+        client.sendAsync(request.build(), HttpResponse.BodyHandlers.ofByteArray()).whenComplete((response, error) -> {
+            if (error != null) {
+                callback.failed(error.toString());
+                return;
+            }
+            Map<String, String> responseHeaders = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+            response.headers().map().forEach((name, values) -> responseHeaders.put(name, String.join(", ", values)));
+            callback.completed(response.statusCode(), "", responseHeaders, response.body());
+        });
+    }
+
+    private void check(String name, HttpDiskCache.Response response, HttpDiskCache.Source expected) {
+        HttpDiskCache.Source actual = response != null ? response.source() : null;
+        System.out.println(name + ": " + actual);
+        if (actual != expected) {
+            failures.add(name + ": expected " + expected + " but was " + actual);
+        }
+    }
+
+    private void checkEquals(String name, int actual, int expected) {
+        System.out.println(name + ": " + actual);
+        if (actual != expected) {
+            failures.add(name + ": expected " + expected + " but was " + actual);
+        }
+    }
+
+    private static void awaitLoaded(HttpDiskCache cache) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_SECONDS * 1000;
+        while (!cache.isLoaded() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    private static void deleteRecursively(Path directory) throws IOException {
+        if (!Files.exists(directory)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : paths.sorted(Collections.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    /**
+     * 模拟内部文档站点的本地服务，只监听本机回环地址。
+     */
+    private static final class DocsServer implements AutoCloseable {
+
+        private static final String LAST_MODIFIED = "Mon, 01 Jan 2024 00:00:00 GMT";
+
+        private final HttpServer server;
+        private final ExecutorService executor = Executors.newFixedThreadPool(4);
+        private final Map<String, AtomicInteger> requests = new ConcurrentHashMap<>();
+        private final Map<String, AtomicInteger> notModified = new ConcurrentHashMap<>();
+        private final int port;
+        private boolean stopped;
+
+        DocsServer() throws IOException {
+            server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+            server.setExecutor(executor);
+            server.createContext("/", this::handle);
+            server.start();
+            port = server.getAddress().getPort();
+        }
+
+        String url(String path) {
+            return "http://127.0.0.1:" + port + path;
+        }
+
+        int requests(String path) {
+            return requests.computeIfAbsent(path, key -> new AtomicInteger()).get();
+        }
+
+        int notModified(String path) {
+            return notModified.computeIfAbsent(path, key -> new AtomicInteger()).get();
+        }
+
+        private void handle(HttpExchange exchange) throws IOException {
+            String path = exchange.getRequestURI().getPath();
+            requests.computeIfAbsent(path, key -> new AtomicInteger()).incrementAndGet();
+            String etag = "\"" + Integer.toHexString(path.hashCode()) + "\"";
+            switch (path.startsWith("/filler/") ? "/filler/" : path) {
+                case "/fresh" -> send(exchange, "max-age=3600", null, page(path, 1024));
+                case "/etag", "/pinned", "/pinned.css" -> {
+                    if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                        notModified.computeIfAbsent(path, key -> new AtomicInteger()).incrementAndGet();
+                        exchange.getResponseHeaders().set("ETag", etag);
+                        exchange.sendResponseHeaders(304, -1);
+                        exchange.close();
+                        return;
+                    }
+                    send(exchange, "no-cache", etag, page(path, 2048));
+                }
+                case "/last-modified" -> {
+                    if (LAST_MODIFIED.equals(exchange.getRequestHeaders().getFirst("If-Modified-Since"))) {
+                        exchange.sendResponseHeaders(304, -1);
+                        exchange.close();
+                        return;
+                    }
+                    exchange.getResponseHeaders().set("Last-Modified", LAST_MODIFIED);
+                    send(exchange, "no-cache", null, page(path, 1024));
+                }
+                case "/no-store" -> send(exchange, "no-store", null, page(path, 512));
+                case "/filler/" -> send(exchange, "no-cache", null, page(path, 4096));
+                default -> {
+                    exchange.sendResponseHeaders(404, -1);
+                    exchange.close();
+                }
+            }
+        }
+
+        private static byte[] page(String path, int size) {
+            char[] filler = new char[size];
+            Arrays.fill(filler, 'x');
+            return ("<!DOCTYPE html><title>" + path + "</title><p>" + new String(filler) + "</p>")
+                    .getBytes(StandardCharsets.UTF_8);
+        }
+
+        private static void send(HttpExchange exchange, String cacheControl, String etag, byte[] body) throws IOException {
+            exchange.getResponseHeaders().set("Content-Type", "text/html; charset=utf-8");
+            exchange.getResponseHeaders().set("Cache-Control", cacheControl);
+            if (etag != null) {
+                exchange.getResponseHeaders().set("ETag", etag);
+            }
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+
+        void stop() {
+            if (!stopped) {
+                stopped = true;
+                server.stop(0);
+                executor.shutdownNow();
+            }
+        }
+
+        @Override
+        public void close() {
+            stop();
+        }
+    }
+}
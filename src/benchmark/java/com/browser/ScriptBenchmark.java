@@ -0,0 +1,198 @@
+package com.browser;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * 注入脚本的基准测试，通过 gradle benchmark 任务运行。
+ * <p>
+ * 启动本地 HTTP 服务提供合成页面，每个场景用无界面的 Chrome 打开若干次，每次都是新的进程和用户目录，
+ * 取各项指标的中位数写入 build/benchmark/results.json。存在基线文件时逐项比较，超出容差视为性能回退，任务失败。
+ * <p>
+ * 参数（系统属性）：
+ * <ul>
+ *     <li>benchmark.runs：每个场景运行的次数，默认 5</li>
+ *     <li>benchmark.scenario：只运行指定的场景</li>
+ *     <li>benchmark.tolerance：允许的相对增幅，默认 0.2</li>
+ *     <li>benchmark.updateBaseline：用本次结果覆盖基线</li>
+ * </ul>
+ * 环境变量 BENCHMARK_CHROME 指定 Chrome 或 Chromium 可执行文件，BENCHMARK_CHROME_ARGS 追加启动参数（例如 --no-sandbox）。
+ */
+public final class ScriptBenchmark {
+
+    private static final long RUN_TIMEOUT_SECONDS = 120;
+    // 与基线比较的指标，以及每项允许的绝对误差，避免很小的数值因为测量抖动被判为回退
+    private static final Map<String, Double> COMPARED_METRICS = new LinkedHashMap<>();
+
+    static {
+        COMPARED_METRICS.put("scriptMs", 2.0);
+        COMPARED_METRICS.put("maxFlushMs", 2.0);
+        COMPARED_METRICS.put("forcedLayouts", 0.0);
+        COMPARED_METRICS.put("heapDeltaBytes", 512 * 1024.0);
+    }
+
+    private ScriptBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        String chrome = System.getenv("BENCHMARK_CHROME");
+        if (chrome == null || chrome.isEmpty()) {
+            System.err.println("Set BENCHMARK_CHROME to a Chrome or Chromium executable to run the benchmark");
+            System.exit(2);
+        }
+        int runs = Integer.getInteger("benchmark.runs", 5);
+        String only = System.getProperty("benchmark.scenario");
+        double tolerance = Double.parseDouble(System.getProperty("benchmark.tolerance", "0.2"));
+        Path output = Paths.get(System.getProperty("benchmark.output", "build/benchmark/results.json"));
+        Path baseline = Paths.get(System.getProperty("benchmark.baseline", "benchmark/baseline.json"));
+
+        JsonObject scenarios = new JsonObject();
+        try (BenchmarkServer server = new BenchmarkServer()) {
+            for (BenchmarkScenario scenario : BenchmarkScenario.ALL) {
+                if (only != null && !only.isEmpty() && !only.equals(scenario.name())) {
+                    continue;
+                }
+                List<JsonObject> samples = new ArrayList<>();
+                for (int i = 0; i < runs; i++) {
+                    samples.add(runOnce(chrome, server, scenario));
+                }
+                JsonObject median = median(samples);
+                scenarios.add(scenario.name(), median);
+                System.out.println(scenario.name() + ": " + median);
+            }
+        }
+
+        JsonObject results = new JsonObject();
+        results.addProperty("runs", runs);
+        results.add("scenarios", scenarios);
+        write(output, results);
+        System.out.println("Results written to " + output.toAbsolutePath());
+
+        if (Boolean.getBoolean("benchmark.updateBaseline")) {
+            write(baseline, results);
+            System.out.println("Baseline updated: " + baseline.toAbsolutePath());
+            return;
+        }
+        if (!Files.exists(baseline)) {
+            System.out.println("No baseline at " + baseline.toAbsolutePath() + ", run with -PupdateBaseline to create one");
+            return;
+        }
+        List<String> regressions = compare(read(baseline).getAsJsonObject("scenarios"), scenarios, tolerance);
+        if (!regressions.isEmpty()) {
+            regressions.forEach(System.err::println);
+            System.exit(1);
+        }
+        System.out.println("No regressions against baseline");
+    }
+
+    private static JsonObject runOnce(String chrome, BenchmarkServer server, BenchmarkScenario scenario) throws Exception {
+        CompletableFuture<String> result = server.expectResult(scenario.name());
+        Path profile = Files.createTempDirectory("browser-benchmark");
+        List<String> command = new ArrayList<>(List.of(chrome,
+                "--headless=new",
+                "--disable-gpu",
+                "--disable-extensions",
+                "--no-first-run",
+                "--no-default-browser-check",
+                "--enable-precise-memory-info",
+                "--js-flags=--expose-gc",
+                "--user-data-dir=" + profile));
+        String extraArgs = System.getenv("BENCHMARK_CHROME_ARGS");
+        if (extraArgs != null && !extraArgs.isBlank()) {
+            command.addAll(Arrays.asList(extraArgs.trim().split("\\s+")));
+        }
+        command.add(server.url("/scenario/" + scenario.name()));
+        Process process = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .start();
+        try {
+            JsonObject sample = JsonParser.parseString(result.get(RUN_TIMEOUT_SECONDS, TimeUnit.SECONDS)).getAsJsonObject();
+            if (sample.has("error")) {
+                throw new IllegalStateException(scenario.name() + " failed: " + sample.get("error").getAsString());
+            }
+            return sample;
+        } finally {
+            process.destroyForcibly().waitFor(10, TimeUnit.SECONDS);
+            deleteRecursively(profile);
+        }
+    }
+
+    private static JsonObject median(List<JsonObject> samples) {
+        JsonObject median = new JsonObject();
+        for (String key : samples.get(0).keySet()) {
+            double[] values = samples.stream().mapToDouble(sample -> sample.get(key).getAsDouble()).sorted().toArray();
+            int middle = values.length / 2;
+            double value = values.length % 2 == 1 ? values[middle] : (values[middle - 1] + values[middle]) / 2;
+            median.addProperty(key, Math.round(value * 100) / 100.0);
+        }
+        return median;
+    }
+
+    private static List<String> compare(JsonObject baseline, JsonObject current, double tolerance) {
+        List<String> regressions = new ArrayList<>();
+        for (String scenario : current.keySet()) {
+            if (baseline == null || !baseline.has(scenario)) {
+                continue;
+            }
+            JsonObject expected = baseline.getAsJsonObject(scenario);
+            JsonObject actual = current.getAsJsonObject(scenario);
+            COMPARED_METRICS.forEach((metric, slack) -> {
+                JsonElement before = expected.get(metric);
+                JsonElement after = actual.get(metric);
+                if (before == null || after == null) {
+                    return;
+                }
+                double limit = before.getAsDouble() * (1 + tolerance) + slack;
+                if (after.getAsDouble() > limit) {
+                    regressions.add("Regression in " + scenario + "." + metric + ": " + after.getAsDouble()
+                            + " (baseline " + before.getAsDouble() + ", limit " + limit + ")");
+                }
+            });
+        }
+        return regressions;
+    }
+
+    private static JsonObject read(Path file) throws IOException {
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return JsonParser.parseReader(reader).getAsJsonObject();
+        }
+    }
+
+    private static void write(Path file, JsonObject json) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Gson gson = new GsonBuilder().setPrettyPrinting().create();
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            gson.toJson(json, writer);
+        }
+    }
+
+    private static void deleteRecursively(Path dir) {
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        } catch (IOException e) {
+            // 临时目录删除失败不影响结果
+        }
+    }
+}
@@ -0,0 +1,192 @@
+// 基准测试脚本：在合成页面加载完成后按插件的方式注入脚本，测量耗时、强制同步布局次数和内存，结果回传给本地服务。
+(function () {
+    const params = window.__benchmark;
+    // 注入脚本报告统计数据的间隔，以及判断页面处理完毕的静默时间
+    const REPORT_DELAY_MS = 100;
+    const QUIET_MS = 1000;
+    // 基准测试不从 Java 端发消息，接收令牌随便取一个
+    const RECEIVE_TOKEN = 'benchmark';
+
+    // ---------- 强制同步布局计数 ----------
+    // DOM 写入后、下一帧之前读取样式或布局，浏览器必须立即重新计算，这里按次数统计
+    let dirty = false;
+    let forcedLayouts = 0;
+
+    function markDirty(target, name) {
+        const original = target[name];
+        target[name] = function () {
+            dirty = true;
+            return original.apply(this, arguments);
+        };
+    }
+
+    function countRead(target, name) {
+        const original = target[name];
+        target[name] = function () {
+            if (dirty) {
+                forcedLayouts++;
+                dirty = false;
+            }
+            return original.apply(this, arguments);
+        };
+    }
+
+    function countGetter(target, name) {
+        const descriptor = Object.getOwnPropertyDescriptor(target, name);
+        Object.defineProperty(target, name, Object.assign({}, descriptor, {
+            get() {
+                if (dirty) {
+                    forcedLayouts++;
+                    dirty = false;
+                }
+                return descriptor.get.call(this);
+            }
+        }));
+    }
+
+    ['appendChild', 'insertBefore', 'removeChild', 'replaceChild'].forEach(name => markDirty(Node.prototype, name));
+    ['setAttribute', 'removeAttribute', 'remove', 'append', 'prepend'].forEach(name => markDirty(Element.prototype, name));
+    ['add', 'remove', 'toggle'].forEach(name => markDirty(DOMTokenList.prototype, name));
+    countRead(window, 'getComputedStyle');
+    countRead(Element.prototype, 'getBoundingClientRect');
+    ['offsetWidth', 'offsetHeight', 'offsetTop', 'offsetLeft'].forEach(name => countGetter(HTMLElement.prototype, name));
+    (function frame() {
+        dirty = false;
+        requestAnimationFrame(frame);
+    })();
+
+    // ---------- 注入脚本的统计数据 ----------
+    const timings = {};
+    const counters = {};
+    let lastReport = performance.now();
+
+    // 与插件相同，注入脚本发来的是一批 { type, data } 消息，这里只统计 metrics
+    function post(json) {
+        JSON.parse(json).filter(message => message.type === 'metrics').forEach(message => merge(message.data));
+        lastReport = performance.now();
+    }
+
+    function merge(report) {
+        Object.keys(report.timings).forEach(name => {
+            const total = timings[name] || (timings[name] = { calls: 0, totalMs: 0, maxMs: 0 });
+            const delta = report.timings[name];
+            total.calls += delta.calls;
+            total.totalMs += delta.totalMs;
+            total.maxMs = Math.max(total.maxMs, delta.maxMs);
+        });
+        Object.keys(report.counters).forEach(name => counters[name] = (counters[name] || 0) + report.counters[name]);
+    }
+
+    function heapUsed() {
+        if (window.gc) {
+            window.gc();
+        }
+        return performance.memory ? performance.memory.usedJSHeapSize : 0;
+    }
+
+    function fetchText(path) {
+        return fetch(path).then(response => response.text());
+    }
+
+    // 页面加载后连续插入节点，模拟无限滚动和动态内容
+    function storm() {
+        return new Promise(resolve => {
+            let batch = 0;
+            (function next() {
+                if (batch >= params.stormBatches) {
+                    resolve();
+                    return;
+                }
+                const container = document.createElement('div');
+                container.className = 'content-wrapper';
+                let html = '';
+                for (let i = 0; i < params.stormSize / 6; i++) {
+                    const index = batch * params.stormSize + i;
+                    if (index % 25 === 0) {
+                        html += '<div class="ad-slot"><span>ad</span></div>';
+                    }
+                    html += '<div class="card" style="background: #fff"><h3>Item ' + index + '</h3>'
+                        + '<p>Lorem ipsum <span>dolor</span> sit amet</p>'
+                        + '<div class="box" style="background-color: rgb(250, 250, 250)">'
+                        + '<a href="#' + index + '" target="_blank">link</a></div></div>';
+                }
+                container.innerHTML = html;
+                document.body.appendChild(container);
+                batch++;
+                requestAnimationFrame(next);
+            })();
+        });
+    }
+
+    function waitQuiet() {
+        return new Promise(resolve => {
+            (function check() {
+                if (performance.now() - lastReport >= QUIET_MS) {
+                    resolve();
+                } else {
+                    setTimeout(check, 100);
+                }
+            })();
+        });
+    }
+
+    // 与插件相同，每个 iframe 各自注入一份脚本，配置标明不是主框架
+    function injectFrames(win, bundle, config) {
+        Array.from(win.document.querySelectorAll('iframe')).forEach(iframe => {
+            const frameWindow = iframe.contentWindow;
+            frameWindow.eval(bundle)(Object.assign({}, config, { mainFrame: false }), post, RECEIVE_TOKEN);
+            injectFrames(frameWindow, bundle, config);
+        });
+    }
+
+    function run() {
+        Promise.all(['runtime.js', 'dark-theme.js', 'page-cleanup.js', 'dark-theme.css']
+            .map(file => fetchText('/scripts/' + file)))
+            .then(([runtime, darkTheme, pageCleanup, darkCss]) => {
+                const config = {
+                    frameBudgetMs: 8, reportDelayMs: REPORT_DELAY_MS, darkMode: true, darkCss: darkCss
+                };
+                const nodes = document.getElementsByTagName('*').length;
+                const heapBefore = heapUsed();
+                forcedLayouts = 0;
+                const start = performance.now();
+                // 与 PageScripts.BUNDLE 相同的拼接方式
+                const bundle = '(function (initialConfig, postBatch, receiveToken) {\n'
+                    + runtime + darkTheme + pageCleanup + '\n})';
+                (0, eval)(bundle)(config, post, RECEIVE_TOKEN);
+                injectFrames(window, bundle, config);
+                const injectMs = performance.now() - start;
+                lastReport = performance.now();
+                return storm()
+                    .then(waitQuiet)
+                    .then(() => {
+                        const flushMs = timings.flush ? timings.flush.totalMs : 0;
+                        return {
+                            nodes: nodes,
+                            injectMs: injectMs,
+                            // 从注入到最后一次报告统计数据的时间，不含最后的静默等待
+                            wallMs: lastReport - start,
+                            flushMs: flushMs,
+                            maxFlushMs: timings.flush ? timings.flush.maxMs : 0,
+                            // 注入时同步执行的时间加上之后所有分批处理的时间
+                            scriptMs: injectMs + flushMs,
+                            darkMs: timings.dark ? timings.dark.totalMs : 0,
+                            adsMs: timings.ads ? timings.ads.totalMs : 0,
+                            processedNodes: counters.nodes || 0,
+                            darkened: counters.darkened || 0,
+                            adsRemoved: counters.adsRemoved || 0,
+                            forcedLayouts: forcedLayouts,
+                            heapDeltaBytes: heapUsed() - heapBefore
+                        };
+                    });
+            })
+            .catch(error => ({ error: String(error) }))
+            .then(result => fetch('/result/' + params.scenario, { method: 'POST', body: JSON.stringify(result) }));
+    }
+
+    if (document.readyState === 'complete') {
+        run();
+    } else {
+        window.addEventListener('load', run);
+    }
+})();
@@ -0,0 +1,100 @@
+package com.browser;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.components.Service;
+import com.intellij.openapi.diagnostic.Logger;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 网络层广告拦截：加载插件内置规则和插件目录下 filters 文件夹中的 EasyList 风格规则文件，
+ * 编译成 {@link FilterIndex} 供 {@link BrowserRequestHandler} 查询。
+ * <p>
+ * 规则在后台线程编译，编译完成前使用空索引，不会阻塞浏览器启动。
+ */
+@Service(Service.Level.APP)
+public final class AdBlocker {
+
+    private static final Logger LOG = Logger.getInstance(AdBlocker.class);
+    private static final String FILTERS_DIR = "filters";
+    private static final String DEFAULT_FILTERS = "/filters/default.txt";
+
+    private volatile FilterIndex index = FilterIndex.EMPTY;
+    private final AtomicLong blockedCount = new AtomicLong();
+
+    public AdBlocker() {
+        ApplicationManager.getApplication().executeOnPooledThread(this::reload);
+    }
+
+    public static AdBlocker getInstance() {
+        return ApplicationManager.getApplication().getService(AdBlocker.class);
+    }
+
+    /**
+     * 重新读取并编译全部规则文件。
+     */
+    public void reload() {
+        List<String> lines = new ArrayList<>();
+        try (InputStream in = AdBlocker.class.getResourceAsStream(DEFAULT_FILTERS)) {
+            if (in != null) {
+                readLines(in, lines);
+            }
+        } catch (IOException e) {
+            LOG.warn("Failed to read default filters", e);
+        }
+        Path dir = Paths.get(PathManager.getPluginsPath(), "browser", FILTERS_DIR);
+        if (Files.isDirectory(dir)) {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*.txt")) {
+                for (Path file : files) {
+                    try (InputStream in = Files.newInputStream(file)) {
+                        readLines(in, lines);
+                    } catch (IOException e) {
+                        LOG.warn("Failed to read filter file " + file, e);
+                    }
+                }
+            } catch (IOException e) {
+                LOG.warn("Failed to list filter files in " + dir, e);
+            }
+        }
+        long start = System.currentTimeMillis();
+        FilterIndex compiled = FilterIndex.compile(lines);
+        index = compiled;
+        LOG.info("Compiled " + compiled.getRuleCount() + " filter rules in " + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    /**
+     * 判断请求是否应当被拦截，会在 CEF 的 IO 线程上调用。
+     */
+    public boolean shouldBlock(String url, String documentUrl, FilterIndex.ResourceKind kind) {
+        boolean blocked = index.shouldBlock(url, documentUrl, kind);
+        if (blocked) {
+            blockedCount.incrementAndGet();
+        }
+        return blocked;
+    }
+
+    public long getBlockedCount() {
+        return blockedCount.get();
+    }
+
+    private static void readLines(InputStream in, List<String> lines) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        }
+    }
+}
@@ -0,0 +1,366 @@
+package com.browser;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.components.Service;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.Disposer;
+import com.intellij.util.Alarm;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import com.intellij.util.containers.ContainerUtil;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 书签存储，所有项目的浏览器面板共用插件目录下的同一个 bookmarks.json。
+ * <p>
+ * 书签只在 EDT 上读写，磁盘读写都在后台线程：
+ * <ul>
+ *     <li>启动时流式读取文件，每读到一批就交给面板显示；</li>
+ *     <li>修改后延迟合并写入，先写临时文件再改名替换，写到一半崩溃也不会损坏原文件；</li>
+ *     <li>监听文件的外部修改（例如团队同步），与上次读写的内容比较，只把新增和删除的书签应用到内存中。</li>
+ * </ul>
+ */
+@Service(Service.Level.APP)
+public final class BookmarkStore implements Disposable {
+
+    private static final Logger LOG = Logger.getInstance(BookmarkStore.class);
+    private static final String BOOKMARKS_FILE = "bookmarks.json";
+    // 修改后延迟写入的时间，连续修改只写一次
+    private static final int SAVE_DELAY_MS = 500;
+    // 文件变化后延迟重新读取的时间，外部程序写文件时可能产生多个事件
+    private static final int RELOAD_DELAY_MS = 300;
+    // 启动时每读到多少条书签通知一次面板
+    private static final int LOAD_CHUNK_SIZE = 500;
+    // 关闭时等待最后一次写入的时间
+    private static final long SHUTDOWN_TIMEOUT_MS = 2000;
+
+    /**
+     * 书签变化时在 EDT 上通知，包括启动时分批读到的书签。
+     */
+    interface Listener {
+        void bookmarksAdded(Collection<String> urls);
+
+        void bookmarksRemoved(Collection<String> urls);
+    }
+
+    private final Path file = Paths.get(PathManager.getPluginsPath(), "browser", BOOKMARKS_FILE);
+    // 只在 EDT 上访问
+    private final Set<String> bookmarks = new LinkedHashSet<>();
+    private final List<Listener> listeners = ContainerUtil.createLockFreeCopyOnWriteList();
+    // 磁盘读写按顺序在同一个后台线程上执行
+    private final ExecutorService ioExecutor = AppExecutorUtil.createBoundedApplicationPoolExecutor("Browser Bookmarks", 1);
+    private final Alarm saveAlarm = new Alarm(Alarm.ThreadToUse.SWING_THREAD, this);
+    private final Alarm reloadAlarm = new Alarm(Alarm.ThreadToUse.SWING_THREAD, this);
+    // 文件中最后一次读到或写入的内容，用来计算外部修改的增量
+    private volatile List<String> diskContent = Collections.emptyList();
+    private boolean loaded;
+    private boolean dirty;
+    private WatchService watchService;
+    private boolean disposed;
+
+    public BookmarkStore() {
+        ioExecutor.execute(this::load);
+    }
+
+    public static BookmarkStore getInstance() {
+        return ApplicationManager.getApplication().getService(BookmarkStore.class);
+    }
+
+    /**
+     * 注册监听，随 parentDisposable 一起移除。只在 EDT 上调用，注册后用 {@link #getBookmarks()} 取得已有的书签。
+     */
+    void addListener(Listener listener, Disposable parentDisposable) {
+        listeners.add(listener);
+        Disposer.register(parentDisposable, () -> listeners.remove(listener));
+    }
+
+    List<String> getBookmarks() {
+        return new ArrayList<>(bookmarks);
+    }
+
+    boolean contains(String url) {
+        return bookmarks.contains(url);
+    }
+
+    void add(String url) {
+        if (bookmarks.add(url)) {
+            List<String> added = List.of(url);
+            listeners.forEach(listener -> listener.bookmarksAdded(added));
+            scheduleSave();
+        }
+    }
+
+    void remove(String url) {
+        if (bookmarks.remove(url)) {
+            List<String> removed = List.of(url);
+            listeners.forEach(listener -> listener.bookmarksRemoved(removed));
+            scheduleSave();
+        }
+    }
+
+    private void scheduleSave() {
+        // 文件读完之前不写入，避免用不完整的列表覆盖文件
+        dirty = true;
+        if (loaded) {
+            saveAlarm.cancelAllRequests();
+            saveAlarm.addRequest(this::save, SAVE_DELAY_MS);
+        }
+    }
+
+    private void save() {
+        if (!dirty) {
+            return;
+        }
+        dirty = false;
+        List<String> snapshot = new ArrayList<>(bookmarks);
+        ioExecutor.execute(() -> write(snapshot));
+    }
+
+    private void write(List<String> snapshot) {
+        Path temp = file.resolveSibling(BOOKMARKS_FILE + ".tmp");
+        try {
+            Files.createDirectories(file.getParent());
+            try (JsonWriter writer = new JsonWriter(Files.newBufferedWriter(temp, StandardCharsets.UTF_8))) {
+                writer.beginArray();
+                for (String url : snapshot) {
+                    writer.value(url);
+                }
+                writer.endArray();
+            }
+            try {
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+            diskContent = snapshot;
+        } catch (IOException e) {
+            LOG.warn("Failed to save bookmarks", e);
+        }
+    }
+
+    /**
+     * 启动时在后台流式读取书签，分批交给 EDT。
+     */
+    private void load() {
+        List<String> content = new ArrayList<>();
+        boolean movedAside = false;
+        try (JsonReader reader = new JsonReader(Files.newBufferedReader(file, StandardCharsets.UTF_8))) {
+            List<String> chunk = new ArrayList<>();
+            reader.beginArray();
+            while (reader.hasNext()) {
+                if (reader.peek() != JsonToken.STRING) {
+                    reader.skipValue();
+                    continue;
+                }
+                String url = reader.nextString();
+                content.add(url);
+                chunk.add(url);
+                if (chunk.size() >= LOAD_CHUNK_SIZE) {
+                    List<String> ready = chunk;
+                    ApplicationManager.getApplication().invokeLater(() -> addLoaded(ready));
+                    chunk = new ArrayList<>();
+                }
+            }
+            reader.endArray();
+            List<String> rest = chunk;
+            ApplicationManager.getApplication().invokeLater(() -> addLoaded(rest));
+        } catch (NoSuchFileException e) {
+            // 还没有保存过书签
+        } catch (IOException | JsonParseException | IllegalStateException e) {
+            LOG.warn("Failed to read bookmarks", e);
+            if (!moveAside()) {
+                // 原文件移不走时不再保存，避免用读到的部分书签覆盖它
+                return;
+            }
+            movedAside = true;
+        }
+        diskContent = content;
+        boolean rewrite = movedAside;
+        ApplicationManager.getApplication().invokeLater(() -> {
+            loaded = true;
+            // 原文件已经移走，把读到的部分书签写成新文件
+            if (dirty || rewrite) {
+                scheduleSave();
+            }
+        });
+        startWatching();
+    }
+
+    // 读不出来的文件改名为 .bad 保留下来，之后保存时写一份新文件
+    private boolean moveAside() {
+        try {
+            Files.move(file, file.resolveSibling(BOOKMARKS_FILE + ".bad"), StandardCopyOption.REPLACE_EXISTING);
+            return true;
+        } catch (IOException e) {
+            LOG.warn("Failed to move the unreadable bookmarks file aside, bookmarks will not be saved", e);
+            return false;
+        }
+    }
+
+    private void addLoaded(List<String> urls) {
+        List<String> added = new ArrayList<>();
+        for (String url : urls) {
+            if (bookmarks.add(url)) {
+                added.add(url);
+            }
+        }
+        if (!added.isEmpty()) {
+            listeners.forEach(listener -> listener.bookmarksAdded(added));
+        }
+    }
+
+    private void startWatching() {
+        try {
+            Files.createDirectories(file.getParent());
+            WatchService service = file.getFileSystem().newWatchService();
+            file.getParent().register(service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            synchronized (this) {
+                if (disposed) {
+                    service.close();
+                    return;
+                }
+                watchService = service;
+            }
+            // take() 一直阻塞到关闭，放在自己的守护线程上，不占用应用线程池；dispose 关闭 WatchService 后线程退出
+            Thread watcher = new Thread(() -> watch(service), "Browser Bookmarks Watcher");
+            watcher.setDaemon(true);
+            watcher.start();
+        } catch (IOException e) {
+            LOG.warn("Failed to watch bookmarks file", e);
+        }
+    }
+
+    private void watch(WatchService service) {
+        try {
+            while (true) {
+                WatchKey key = service.take();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (file.getFileName().equals(event.context())) {
+                        ApplicationManager.getApplication().invokeLater(this::scheduleReload);
+                    }
+                }
+                if (!key.reset()) {
+                    return;
+                }
+            }
+        } catch (ClosedWatchServiceException | InterruptedException e) {
+            // dispose 关闭了 WatchService
+        }
+    }
+
+    private void scheduleReload() {
+        if (!reloadAlarm.isDisposed()) {
+            reloadAlarm.cancelAllRequests();
+            reloadAlarm.addRequest(() -> ioExecutor.execute(this::reload), RELOAD_DELAY_MS);
+        }
+    }
+
+    /**
+     * 重新读取被外部修改的文件，只应用与上次读写内容之间的差异，本地尚未写入的修改会保留。
+     */
+    private void reload() {
+        List<String> content;
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            content = readAll(reader);
+        } catch (NoSuchFileException e) {
+            return;
+        } catch (IOException | JsonParseException | IllegalStateException e) {
+            // 外部程序可能还没写完，等下一次文件事件
+            LOG.debug("Failed to reload bookmarks", e);
+            return;
+        }
+        List<String> base = diskContent;
+        if (content.equals(base)) {
+            // 自己写入的内容，或者没有变化
+            return;
+        }
+        diskContent = content;
+        Set<String> added = new LinkedHashSet<>(content);
+        base.forEach(added::remove);
+        Set<String> removed = new LinkedHashSet<>(base);
+        content.forEach(removed::remove);
+        ApplicationManager.getApplication().invokeLater(() -> applyExternal(added, removed));
+    }
+
+    private void applyExternal(Set<String> added, Set<String> removed) {
+        List<String> actuallyRemoved = new ArrayList<>();
+        for (String url : removed) {
+            if (bookmarks.remove(url)) {
+                actuallyRemoved.add(url);
+            }
+        }
+        if (!actuallyRemoved.isEmpty()) {
+            listeners.forEach(listener -> listener.bookmarksRemoved(actuallyRemoved));
+        }
+        addLoaded(new ArrayList<>(added));
+        LOG.info("Reloaded bookmarks: " + added.size() + " added, " + removed.size() + " removed");
+    }
+
+    private static List<String> readAll(Reader in) throws IOException {
+        List<String> content = new ArrayList<>();
+        JsonReader reader = new JsonReader(in);
+        reader.beginArray();
+        while (reader.hasNext()) {
+            if (reader.peek() == JsonToken.STRING) {
+                content.add(reader.nextString());
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endArray();
+        return content;
+    }
+
+    @Override
+    public void dispose() {
+        // 关闭前把尚未写入的修改写盘，排在已经提交的写入之后
+        if (loaded && dirty) {
+            dirty = false;
+            List<String> snapshot = new ArrayList<>(bookmarks);
+            try {
+                ioExecutor.submit(() -> write(snapshot)).get(SHUTDOWN_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException | ExecutionException | TimeoutException e) {
+                LOG.warn("Failed to save bookmarks on shutdown", e);
+            }
+        }
+        synchronized (this) {
+            disposed = true;
+            if (watchService != null) {
+                try {
+                    watchService.close();
+                } catch (IOException e) {
+                    LOG.debug(e);
+                }
+            }
+        }
+    }
+}
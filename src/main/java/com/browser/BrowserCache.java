@@ -0,0 +1,136 @@
+package com.browser;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.components.Service;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import org.cef.browser.CefBrowser;
+import org.cef.browser.CefFrame;
+import org.cef.handler.CefResourceHandler;
+import org.cef.handler.CefResourceRequestHandler;
+import org.cef.handler.CefResourceRequestHandlerAdapter;
+import org.cef.network.CefRequest;
+
+import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Consumer;
+
+/**
+ * 插件的 HTTP 磁盘缓存和离线页面，保存在插件目录下的 http-cache 文件夹中。
+ * <p>
+ * 打开 {@link BrowserSettings.State#httpCacheEnabled} 后所有可缓存的 GET 请求都经过 {@link HttpDiskCache}；
+ * 没有打开时只有固定的书签页面和它们的资源经过缓存。删除书签时同时取消固定。
+ */
+@Service(Service.Level.APP)
+public final class BrowserCache implements Disposable {
+
+    private static final Logger LOG = Logger.getInstance(BrowserCache.class);
+    // 经过缓存的资源类型：文档、样式、脚本、图片和字体
+    private static final Set<CefRequest.ResourceType> BUFFERED_TYPES = EnumSet.of(CefRequest.ResourceType.RT_MAIN_FRAME,
+            CefRequest.ResourceType.RT_STYLESHEET, CefRequest.ResourceType.RT_SCRIPT, CefRequest.ResourceType.RT_IMAGE,
+            CefRequest.ResourceType.RT_FONT_RESOURCE);
+
+    private final ExecutorService ioExecutor = AppExecutorUtil.createBoundedApplicationPoolExecutor("Browser HTTP Cache", 1);
+    private final HttpDiskCache cache = new HttpDiskCache(Paths.get(PathManager.getPluginsPath(), "browser", "http-cache"),
+            getMaxBytes(), ioExecutor, LOG::warn);
+
+    public BrowserCache() {
+        ApplicationManager.getApplication().invokeLater(() -> BookmarkStore.getInstance().addListener(new BookmarkStore.Listener() {
+            @Override
+            public void bookmarksAdded(Collection<String> urls) {
+            }
+
+            @Override
+            public void bookmarksRemoved(Collection<String> urls) {
+                urls.forEach(cache::unpin);
+            }
+        }, this));
+    }
+
+    public static BrowserCache getInstance() {
+        return ApplicationManager.getApplication().getService(BrowserCache.class);
+    }
+
+    boolean isPinned(String url) {
+        return cache.isPinned(url);
+    }
+
+    /**
+     * 固定或取消固定一个书签页面，固定的页面下次加载后可以离线打开。
+     */
+    void setPinned(String url, boolean pinned) {
+        if (pinned) {
+            cache.pin(url);
+        } else {
+            cache.unpin(url);
+        }
+    }
+
+    /**
+     * 页面是否通过磁盘缓存加载。
+     */
+    boolean handles(String pageUrl) {
+        return BrowserSettings.getInstance().getState().httpCacheEnabled || cache.isPinned(pageUrl);
+    }
+
+    /**
+     * 预先把页面文档读进磁盘缓存，已经新鲜的条目不会发出请求。完成后调用 callback，失败时传入 null。
+     */
+    void prefetch(String url, HttpDiskCache.Network network, Consumer<HttpDiskCache.Response> callback) {
+        cache.setMaxBytes(getMaxBytes());
+        cache.load(url, Map.of("Accept", "text/html,application/xhtml+xml,*/*;q=0.8"), url, network, callback);
+    }
+
+    /**
+     * 需要经过缓存的请求返回对应的处理器，其他请求返回 null 交给 CEF 默认流程。会在 CEF 的 IO 线程上调用。
+     */
+    CefResourceRequestHandler getResourceRequestHandler(CefBrowser browser, CefRequest request) {
+        return getResourceRequestHandler(browser, request, Long.MAX_VALUE);
+    }
+
+    /**
+     * 同上，响应体超过 maxBytes 时取消请求。页面不经过缓存但需要限制大小时直接从网络读取。
+     */
+    CefResourceRequestHandler getResourceRequestHandler(CefBrowser browser, CefRequest request, long maxBytes) {
+        CefRequest.ResourceType type = request.getResourceType();
+        String url = request.getURL();
+        String range = request.getHeaderByName("Range");
+        String accept = request.getHeaderByName("Accept");
+        // 响应整块读进内存，只接管一次读完的资源；XHR、fetch、EventSource 和长轮询的响应可能一直不结束，
+        // 媒体按范围请求，都交给 CEF
+        if (!"GET".equals(request.getMethod()) || request.getPostData() != null || url == null
+                || !url.startsWith("http") || !BUFFERED_TYPES.contains(type)
+                || accept != null && accept.toLowerCase(Locale.ROOT).contains("text/event-stream")
+                || range != null && !range.isEmpty()) {
+            return null;
+        }
+        String pageUrl = type == CefRequest.ResourceType.RT_MAIN_FRAME ? url : browser.getURL();
+        boolean cached = handles(pageUrl);
+        if (!cached && maxBytes == Long.MAX_VALUE) {
+            return null;
+        }
+        cache.setMaxBytes(getMaxBytes());
+        return new CefResourceRequestHandlerAdapter() {
+            @Override
+            public CefResourceHandler getResourceHandler(CefBrowser browser, CefFrame frame, CefRequest request) {
+                return new CachingResourceHandler(cached ? cache : null, pageUrl, maxBytes);
+            }
+        };
+    }
+
+    private static long getMaxBytes() {
+        return BrowserSettings.getInstance().getState().httpCacheMaxMb * 1024L * 1024L;
+    }
+
+    @Override
+    public void dispose() {
+        // 写入都是单个文件的原子替换，没写完的在下次启动时清理
+    }
+}
@@ -0,0 +1,237 @@
+package com.browser;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.components.Service;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.util.concurrency.AppExecutorUtil;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * 浏览历史和地址栏补全。访问记录和书签都放进 {@link HistoryIndex}，索引只在一个后台线程上读写，
+ * 记录访问和查询都不会阻塞 EDT。
+ * <p>
+ * 地址栏每输入一个字符发起一次查询，查询带有递增的序号：后台线程只执行最新的一次，
+ * 结果回到 EDT 时如果已经有更新的查询也直接丢弃。
+ * <p>
+ * 访问记录追加到 {@link HistoryJournal}，启动时在索引线程上分批读回，每批之间可以穿插查询，
+ * 启动时间不随历史大小增长。
+ */
+@Service(Service.Level.APP)
+public final class BrowserHistory implements Disposable {
+
+    // 有新的访问记录后，空闲多久（毫秒）重新计算排序，避免在输入时计算
+    private static final long RANK_REFRESH_DELAY_MS = 1000;
+    // 启动时每个任务读取的日志记录数，读完一批让出索引线程
+    private static final int LOAD_BATCH_RECORDS = 5000;
+    private static final long SHUTDOWN_TIMEOUT_MS = 2000;
+    private static final long DAY_MS = 24L * 60 * 60 * 1000;
+    private static final Logger LOG = Logger.getInstance(BrowserHistory.class);
+
+    /**
+     * 补全候选项。
+     */
+    record Suggestion(String url, String title, boolean bookmarked) {
+        @Override
+        public String toString() {
+            return title == null || title.isEmpty() || title.equals(url) ? url : title + " - " + url;
+        }
+    }
+
+    private final HistoryIndex index = new HistoryIndex();
+    private final ExecutorService indexExecutor = AppExecutorUtil.createBoundedApplicationPoolExecutor("Browser History", 1);
+    // 压缩日志时写新文件，不占用处理查询的索引线程
+    private final ExecutorService compactionExecutor =
+            AppExecutorUtil.createBoundedApplicationPoolExecutor("Browser History Compaction", 1);
+    private final AtomicLong querySequence = new AtomicLong();
+    // 只在索引线程上访问
+    private final HistoryJournal journal = new HistoryJournal(
+            Paths.get(PathManager.getPluginsPath(), "browser", "history", "history.log"));
+    private ScheduledFuture<?> rankRefresh;
+
+    public BrowserHistory() {
+        indexExecutor.execute(this::loadJournal);
+        // 书签也参与补全，书签的增删通过监听同步到索引
+        ApplicationManager.getApplication().invokeLater(() -> {
+            BookmarkStore store = BookmarkStore.getInstance();
+            List<String> bookmarks = store.getBookmarks();
+            indexExecutor.execute(() -> bookmarks.forEach(url -> index.setBookmarked(url, true)));
+            store.addListener(new BookmarkStore.Listener() {
+                @Override
+                public void bookmarksAdded(Collection<String> urls) {
+                    List<String> added = new ArrayList<>(urls);
+                    indexExecutor.execute(() -> added.forEach(url -> index.setBookmarked(url, true)));
+                }
+
+                @Override
+                public void bookmarksRemoved(Collection<String> urls) {
+                    List<String> removed = new ArrayList<>(urls);
+                    indexExecutor.execute(() -> removed.forEach(url -> index.setBookmarked(url, false)));
+                }
+            }, this);
+        });
+    }
+
+    public static BrowserHistory getInstance() {
+        return ApplicationManager.getApplication().getService(BrowserHistory.class);
+    }
+
+    /**
+     * 记录一次访问，可以在任意线程上调用。只记录 http(s) 地址。
+     */
+    void recordVisit(String url, String title) {
+        if (url == null || !url.startsWith("http")) {
+            return;
+        }
+        long time = System.currentTimeMillis();
+        indexExecutor.execute(() -> {
+            index.recordVisit(url, title, time);
+            journal.appendVisit(url, time);
+            if (title != null) {
+                journal.appendTitle(url, title);
+            }
+            compactIfNeeded();
+            scheduleRankRefresh();
+        });
+    }
+
+    /**
+     * 页面标题变化时更新已有记录的标题。
+     */
+    void recordTitle(String url, String title) {
+        if (url == null || title == null || !url.startsWith("http")) {
+            return;
+        }
+        indexExecutor.execute(() -> {
+            HistoryIndex.Entry entry = index.get(url);
+            if (entry != null && !title.equals(entry.title)) {
+                index.setTitle(url, title);
+                journal.appendTitle(url, title);
+            }
+        });
+    }
+
+    /**
+     * 在后台查询补全候选，结果在 EDT 上交给 callback；被更新的查询取代时不会回调。只在 EDT 上调用。
+     */
+    void search(String query, int limit, Consumer<List<Suggestion>> callback) {
+        long sequence = querySequence.incrementAndGet();
+        indexExecutor.execute(() -> {
+            if (sequence != querySequence.get()) {
+                return;
+            }
+            List<Suggestion> suggestions = new ArrayList<>();
+            for (HistoryIndex.Entry entry : index.search(query, limit, System.currentTimeMillis())) {
+                suggestions.add(new Suggestion(entry.url, entry.title, entry.bookmarked));
+            }
+            ApplicationManager.getApplication().invokeLater(() -> {
+                if (sequence == querySequence.get()) {
+                    callback.accept(suggestions);
+                }
+            });
+        });
+    }
+
+    /**
+     * 取出最常打开的 limit 个地址，在索引线程上交给 callback。
+     */
+    void topUrls(int limit, Consumer<List<String>> callback) {
+        indexExecutor.execute(() -> {
+            List<String> urls = new ArrayList<>();
+            for (HistoryIndex.Entry entry : index.top(limit, System.currentTimeMillis())) {
+                urls.add(entry.url);
+            }
+            callback.accept(urls);
+        });
+    }
+
+    /**
+     * 取消尚未返回的查询，例如地址栏失去焦点时。只在 EDT 上调用。
+     */
+    void cancelSearch() {
+        querySequence.incrementAndGet();
+    }
+
+    // 在索引线程上调用，读一批记录，没读完就把剩下的排到队尾
+    private void loadJournal() {
+        try {
+            if (journal.load(index, LOAD_BATCH_RECORDS, retentionCutoff())) {
+                indexExecutor.execute(this::loadJournal);
+                return;
+            }
+            LOG.info("Loaded " + index.size() + " history entries");
+        } catch (IOException e) {
+            LOG.warn("Failed to load history journal", e);
+        }
+        // 读完后立即排序一次，之前的查询要逐个比较所有读入的条目
+        index.refreshRank(System.currentTimeMillis());
+        compactIfNeeded();
+    }
+
+    // 在索引线程上调用：取快照后在另一个线程上写新文件，写完回到索引线程替换日志
+    private void compactIfNeeded() {
+        if (!journal.needsCompaction(index.size())) {
+            return;
+        }
+        HistoryJournal.Compaction compaction = journal.startCompaction(index, retentionCutoff());
+        compactionExecutor.execute(() -> {
+            try {
+                compaction.write();
+            } catch (IOException e) {
+                LOG.warn("Failed to compact history journal", e);
+            }
+            indexExecutor.execute(() -> {
+                try {
+                    journal.finishCompaction(compaction);
+                } catch (IOException e) {
+                    LOG.warn("Failed to compact history journal", e);
+                }
+            });
+        });
+    }
+
+    private static long retentionCutoff() {
+        int days = BrowserSettings.getInstance().getState().historyRetentionDays;
+        return days > 0 ? System.currentTimeMillis() - days * DAY_MS : 0;
+    }
+
+    // 在索引线程上调用
+    private void scheduleRankRefresh() {
+        if (rankRefresh != null) {
+            rankRefresh.cancel(false);
+        }
+        rankRefresh = AppExecutorUtil.getAppScheduledExecutorService().schedule(
+                () -> indexExecutor.execute(() -> {
+                    if (index.isRankDirty()) {
+                        index.refreshRank(System.currentTimeMillis());
+                    }
+                }), RANK_REFRESH_DELAY_MS, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void dispose() {
+        querySequence.incrementAndGet();
+        // 排在已经提交的追加之后关闭日志
+        try {
+            indexExecutor.submit(() -> {
+                journal.close();
+                return null;
+            }).get(SHUTDOWN_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException | ExecutionException | TimeoutException e) {
+            LOG.warn("Failed to close history journal", e);
+        }
+    }
+}
@@ -0,0 +1,479 @@
+package com.browser;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Disposer;
+import com.intellij.util.Alarm;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * 每个项目一个的浏览器面板，包含地址栏、书签列表和多个浏览器标签页。
+ * <p>
+ * 每个标签页拥有自己的浏览器，同时存活的标签页超过 {@link BrowserSettings.State#maxLiveTabs}
+ * 或者 JS 堆总量超过 {@link BrowserSettings.State#tabMemoryBudgetMb} 时，按最近最少使用的顺序丢弃后台标签页。
+ * <p>
+ * 打开的标签页保存在项目的会话（{@link BrowserSession}）中，重新打开项目时先恢复选中的标签页，
+ * 其他标签页在第一次切换过去时才加载。
+ */
+class BrowserPanel extends JPanel implements Disposable, BrowserTab.Listener {
+
+    private static final String HOME_URL = "https://www.baidu.com";
+    // 标签页标题的最大显示长度
+    private static final int MAX_TAB_TITLE_LENGTH = 20;
+    // 鼠标在书签上停留多久（毫秒）后开始预取
+    private static final int HOVER_PREFETCH_DELAY_MS = 150;
+
+    private final JTextField urlField = new JTextField(HOME_URL);
+    // 按历史和书签补全地址
+    private final UrlCompletion urlCompletion = new UrlCompletion(urlField, this::loadURL);
+    private final JTabbedPane tabbedPane = new JTabbedPane();
+    private final List<BrowserTab> tabs = new ArrayList<>();
+    private final BrowserSession session;
+    // 已经是标签页记录的第一项时不能后退
+    private final JButton backButton = new JButton("Back");
+    // 把当前站点加入节省流量模式的允许列表
+    private final JToggleButton allowSiteButton = new JToggleButton("Allow Site");
+    private boolean windowVisible = false;
+    // 正在按会话添加标签页，选中的标签页确定之前不创建浏览器
+    private boolean restoring = false;
+    private boolean disposed = false;
+
+    BrowserPanel(Project project) {
+        super(new BorderLayout());
+        JPanel bookmarkPanel = createBookmarkPanel();
+        createToolbar(bookmarkPanel);
+        add(bookmarkPanel, BorderLayout.WEST);
+        add(tabbedPane, BorderLayout.CENTER);
+        tabbedPane.addChangeListener(e -> onTabSelected());
+        session = BrowserSession.getInstance(project);
+        session.load(this::saveSession, this::restoreSession);
+    }
+
+    /**
+     * 按读到的会话打开标签页，没有保存过时打开主页。
+     */
+    private void restoreSession(BrowserSession.State state) {
+        if (disposed || !tabs.isEmpty()) {
+            return;
+        }
+        if (state == null || state.tabs.isEmpty()) {
+            openTab(HOME_URL);
+            return;
+        }
+        restoring = true;
+        try {
+            for (BrowserSession.TabState tabState : state.tabs) {
+                if (tabState != null && tabState.url != null) {
+                    addTab(new BrowserTab(tabState, this));
+                }
+            }
+        } finally {
+            restoring = false;
+        }
+        if (tabs.isEmpty()) {
+            openTab(HOME_URL);
+            return;
+        }
+        tabbedPane.setSelectedIndex(Math.max(0, Math.min(state.selected, tabs.size() - 1)));
+        onTabSelected();
+    }
+
+    private BrowserSession.State saveSession() {
+        BrowserSession.State state = new BrowserSession.State();
+        for (BrowserTab tab : tabs) {
+            state.tabs.add(tab.toState());
+        }
+        state.selected = Math.max(0, tabbedPane.getSelectedIndex());
+        return state;
+    }
+
+    /**
+     * 工具窗口显示或隐藏时调用，只在 EDT 上调用。浏览器在工具窗口第一次显示时才创建。
+     */
+    void setWindowVisible(boolean visible) {
+        windowVisible = visible;
+        BrowserTab selected = getSelectedTab();
+        if (selected != null) {
+            selected.setShowing(visible);
+        }
+    }
+
+    private BrowserTab openTab(String url) {
+        BrowserTab tab = addTab(new BrowserTab(url, this));
+        tabbedPane.setSelectedComponent(tab.getComponent());
+        session.scheduleSave();
+        return tab;
+    }
+
+    private BrowserTab addTab(BrowserTab tab) {
+        Disposer.register(this, tab);
+        tabs.add(tab);
+        tabbedPane.addTab(shortenTitle(tab.getTitle()), tab.getComponent());
+        return tab;
+    }
+
+    private void closeTab(BrowserTab tab) {
+        // 至少保留一个标签页
+        if (tabs.size() <= 1) {
+            return;
+        }
+        tabs.remove(tab);
+        tabbedPane.remove(tab.getComponent());
+        Disposer.dispose(tab);
+        session.scheduleSave();
+    }
+
+    private BrowserTab getSelectedTab() {
+        Component selected = tabbedPane.getSelectedComponent();
+        for (BrowserTab tab : tabs) {
+            if (tab.getComponent() == selected) {
+                return tab;
+            }
+        }
+        return null;
+    }
+
+    private void onTabSelected() {
+        if (restoring) {
+            return;
+        }
+        BrowserTab selected = getSelectedTab();
+        for (BrowserTab tab : tabs) {
+            if (tab != selected) {
+                tab.setShowing(false);
+            }
+        }
+        if (selected == null) {
+            return;
+        }
+        selected.setShowing(windowVisible);
+        urlCompletion.setText(selected.getUrl());
+        backButton.setEnabled(selected.canGoBack());
+        updateAllowSiteButton();
+        enforceTabLimit(selected);
+        session.scheduleSave();
+    }
+
+    /**
+     * 按最近最少使用的顺序丢弃后台标签页，直到存活数量和 JS 堆总量都在限制之内。
+     */
+    private void enforceTabLimit(BrowserTab selected) {
+        BrowserSettings.State settings = BrowserSettings.getInstance().getState();
+        List<BrowserTab> live = new ArrayList<>();
+        long heapBytes = 0;
+        for (BrowserTab tab : tabs) {
+            if (tab.isLive()) {
+                live.add(tab);
+                heapBytes += tab.getHeapBytes();
+            }
+        }
+        live.sort(Comparator.comparingLong(BrowserTab::getLastActiveTime));
+        long budget = settings.tabMemoryBudgetMb * 1024L * 1024L;
+        int liveCount = live.size();
+        for (BrowserTab tab : live) {
+            if (liveCount <= settings.maxLiveTabs && (budget <= 0 || heapBytes <= budget)) {
+                break;
+            }
+            if (tab == selected) {
+                continue;
+            }
+            tab.discard();
+            liveCount--;
+            heapBytes -= tab.getHeapBytes();
+        }
+    }
+
+    @Override
+    public void addressChanged(BrowserTab tab, String url) {
+        if (tab == getSelectedTab()) {
+            urlCompletion.setText(url);
+            backButton.setEnabled(tab.canGoBack());
+            updateAllowSiteButton();
+        }
+        session.scheduleSave();
+    }
+
+    @Override
+    public void titleChanged(BrowserTab tab, String title) {
+        int index = tabbedPane.indexOfComponent(tab.getComponent());
+        if (index >= 0) {
+            tabbedPane.setTitleAt(index, shortenTitle(title));
+            tabbedPane.setToolTipTextAt(index, title);
+        }
+        session.scheduleSave();
+    }
+
+    @Override
+    public void restoreRequested(BrowserTab tab) {
+        tab.restore();
+        enforceTabLimit(tab);
+    }
+
+    @Override
+    public void scrollChanged(BrowserTab tab) {
+        session.scheduleSave();
+    }
+
+    private void updateAllowSiteButton() {
+        LiteMode liteMode = LiteMode.getInstance();
+        BrowserTab tab = getSelectedTab();
+        allowSiteButton.setEnabled(liteMode.isEnabled() && tab != null);
+        allowSiteButton.setSelected(tab != null && liteMode.isAllowed(tab.getUrl()));
+    }
+
+    private void reloadLiveTabs() {
+        for (BrowserTab tab : tabs) {
+            if (tab.isLive()) {
+                tab.getCefBrowser().reload();
+            }
+        }
+    }
+
+    private static String shortenTitle(String title) {
+        if (title == null || title.isEmpty()) {
+            return "New Tab";
+        }
+        return title.length() > MAX_TAB_TITLE_LENGTH ? title.substring(0, MAX_TAB_TITLE_LENGTH) + "..." : title;
+    }
+
+    private void loadURL(String url) {
+        BrowserTab tab = getSelectedTab();
+        if (tab == null) {
+            tab = openTab(url);
+        }
+        tab.loadURL(url);
+        enforceTabLimit(tab);
+    }
+
+    private void goBack() {
+        BrowserTab tab = getSelectedTab();
+        if (tab != null) {
+            tab.goBack();
+            enforceTabLimit(tab);
+        }
+    }
+
+    private void goForward() {
+        BrowserTab tab = getSelectedTab();
+        if (tab != null) {
+            tab.goForward();
+            enforceTabLimit(tab);
+        }
+    }
+
+    private void createToolbar(JPanel bookmarkPanel) {
+        // 添加地址栏
+        JButton loadButton = new JButton("Load");
+        loadButton.addActionListener(e -> loadURL(urlField.getText()));
+
+        // 支持回车键加载网页
+        urlField.addActionListener(e -> loadURL(urlField.getText()));
+        JPanel topPanel = new JPanel(new BorderLayout());
+
+        JPanel browserPanel = new JPanel(new BorderLayout());
+        JPanel browserButtonPanel = new JPanel(new BorderLayout());
+        browserPanel.add(browserButtonPanel, BorderLayout.WEST);
+        browserPanel.add(urlField, BorderLayout.CENTER);
+        browserPanel.add(loadButton, BorderLayout.EAST);
+        topPanel.add(browserPanel, BorderLayout.CENTER);
+        backButton.addActionListener(e -> goBack());
+        browserButtonPanel.add(backButton, BorderLayout.WEST);
+
+        JButton forwardButton = new JButton("Forward");
+        forwardButton.addActionListener(e -> goForward());
+        browserButtonPanel.add(forwardButton, BorderLayout.CENTER);
+
+        JPanel tabButtonPanel = new JPanel(new BorderLayout());
+        JButton newTabButton = new JButton("New Tab");
+        newTabButton.addActionListener(e -> openTab(HOME_URL));
+        tabButtonPanel.add(newTabButton, BorderLayout.WEST);
+        JButton closeTabButton = new JButton("Close Tab");
+        closeTabButton.addActionListener(e -> {
+            BrowserTab tab = getSelectedTab();
+            if (tab != null) {
+                closeTab(tab);
+            }
+        });
+        tabButtonPanel.add(closeTabButton, BorderLayout.EAST);
+        browserButtonPanel.add(tabButtonPanel, BorderLayout.EAST);
+
+        BrowserSettings settings = BrowserSettings.getInstance();
+        JButton blackButton = new JButton(settings.isDarkMode() ? "White" : "Black");
+        blackButton.addActionListener(e -> {
+            settings.setDarkMode(!settings.isDarkMode());
+            blackButton.setText(settings.isDarkMode() ? "White" : "Black");
+            // 通知页面切换主题，不重新加载
+            tabs.forEach(BrowserTab::darkModeChanged);
+        });
+
+        // 节省流量模式，切换后重新加载页面，已经下载的资源不受影响
+        LiteMode liteMode = LiteMode.getInstance();
+        JToggleButton liteButton = new JToggleButton("Lite", liteMode.isEnabled());
+        liteButton.addActionListener(e -> {
+            liteMode.setEnabled(liteButton.isSelected());
+            updateAllowSiteButton();
+            reloadLiveTabs();
+        });
+        allowSiteButton.addActionListener(e -> {
+            BrowserTab tab = getSelectedTab();
+            if (tab != null) {
+                liteMode.setAllowed(tab.getUrl(), allowSiteButton.isSelected());
+                if (tab.isLive()) {
+                    tab.getCefBrowser().reload();
+                }
+            }
+        });
+        updateAllowSiteButton();
+
+        // 页面性能统计
+        JButton statsButton = new JButton("Stats");
+        statsButton.addActionListener(e -> new BrowserStatsDialog().show());
+
+        JPanel rightButtonPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT, 0, 0));
+        rightButtonPanel.add(statsButton);
+        rightButtonPanel.add(liteButton);
+        rightButtonPanel.add(allowSiteButton);
+        rightButtonPanel.add(blackButton);
+        topPanel.add(rightButtonPanel, BorderLayout.EAST);
+
+//        JSlider opacitySlider = new JSlider(0, 100, 0); // 0% to 100%
+//        opacitySlider.addChangeListener(e -> {
+//            float opacity = opacitySlider.getValue() / 100f;
+//            jbCefBrowser.getComponent().setOpaque(false);
+//            jbCefBrowser.getComponent().setBackground(new Color(0, 0, 0, (int) (255 * opacity)));
+//        });
+//        topPanel.add(opacitySlider, BorderLayout.EAST);
+
+        // 添加折叠按钮
+        JToggleButton toggleBookmarkPanelButton = new JToggleButton("Toggle Bookmarks");
+        toggleBookmarkPanelButton.addActionListener(e -> {
+            bookmarkPanel.setVisible(toggleBookmarkPanelButton.isSelected());
+        });
+        topPanel.add(toggleBookmarkPanelButton, BorderLayout.WEST); // 或者添加到其他合适的位置
+
+        add(topPanel, BorderLayout.NORTH);
+    }
+
+    private JPanel createBookmarkPanel() {
+        JPanel bookmarkPanel = new JPanel(new BorderLayout());
+
+        // 添加书签管理，书签在后台读取，读到后通过监听分批显示
+        BookmarkStore store = BookmarkStore.getInstance();
+        DefaultListModel<String> bookmarkListModel = new DefaultListModel<>();
+        bookmarkListModel.addAll(store.getBookmarks());
+        store.addListener(new BookmarkStore.Listener() {
+            @Override
+            public void bookmarksAdded(Collection<String> urls) {
+                bookmarkListModel.addAll(urls);
+            }
+
+            @Override
+            public void bookmarksRemoved(Collection<String> urls) {
+                urls.forEach(bookmarkListModel::removeElement);
+            }
+        }, this);
+        JList<String> bookmarkList = new JList<>(bookmarkListModel);
+        // 固定的书签加粗显示
+        BrowserCache cache = BrowserCache.getInstance();
+        bookmarkList.setCellRenderer(new DefaultListCellRenderer() {
+            @Override
+            public Component getListCellRendererComponent(JList<?> list, Object value, int index, boolean isSelected,
+                                                          boolean cellHasFocus) {
+                Component component = super.getListCellRendererComponent(list, value, index, isSelected, cellHasFocus);
+                if (value instanceof String url && cache.isPinned(url)) {
+                    component.setFont(component.getFont().deriveFont(Font.BOLD));
+                }
+                return component;
+            }
+        });
+        JButton addBookmarkButton = new JButton("Add Bookmark");
+        addBookmarkButton.addActionListener(e -> store.add(urlField.getText()));
+
+        JButton deleteBookmarkButton = new JButton("Delete Bookmark");
+        deleteBookmarkButton.addActionListener(e -> {
+            String selectedUrl = bookmarkList.getSelectedValue();
+            if (selectedUrl != null) {
+                store.remove(selectedUrl);
+            }
+        });
+
+        // 鼠标停在书签上时预先连接或预取这个页面
+        Alarm hoverAlarm = new Alarm(Alarm.ThreadToUse.SWING_THREAD, this);
+        MouseAdapter hoverListener = new MouseAdapter() {
+            private String hovered;
+
+            @Override
+            public void mouseMoved(MouseEvent e) {
+                int index = bookmarkList.locationToIndex(e.getPoint());
+                Rectangle bounds = index >= 0 ? bookmarkList.getCellBounds(index, index) : null;
+                String url = bounds != null && bounds.contains(e.getPoint()) ? bookmarkListModel.get(index) : null;
+                if (url != null && !url.equals(hovered)) {
+                    hoverAlarm.cancelAllRequests();
+                    hoverAlarm.addRequest(() -> Prefetcher.getInstance().hover(url), HOVER_PREFETCH_DELAY_MS);
+                } else if (url == null) {
+                    hoverAlarm.cancelAllRequests();
+                }
+                hovered = url;
+            }
+
+            @Override
+            public void mouseExited(MouseEvent e) {
+                hoverAlarm.cancelAllRequests();
+                hovered = null;
+            }
+        };
+        bookmarkList.addMouseMotionListener(hoverListener);
+        bookmarkList.addMouseListener(hoverListener);
+
+        // 固定的书签页面和它的资源保存在磁盘缓存中，可以离线打开
+        JToggleButton pinButton = new JToggleButton("Pin");
+        pinButton.setEnabled(false);
+        pinButton.addActionListener(e -> {
+            String selectedUrl = bookmarkList.getSelectedValue();
+            if (selectedUrl != null) {
+                cache.setPinned(selectedUrl, pinButton.isSelected());
+                bookmarkList.repaint();
+            }
+        });
+
+        bookmarkList.addListSelectionListener(e -> {
+            if (!e.getValueIsAdjusting()) {
+                String selectedUrl = bookmarkList.getSelectedValue();
+                pinButton.setEnabled(selectedUrl != null);
+                pinButton.setSelected(selectedUrl != null && cache.isPinned(selectedUrl));
+                if (selectedUrl != null) {
+                    loadURL(selectedUrl);
+                    urlCompletion.setText(selectedUrl);
+                }
+            }
+        });
+
+        JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        buttonPanel.add(addBookmarkButton);
+        buttonPanel.add(deleteBookmarkButton);
+        buttonPanel.add(pinButton);
+
+        bookmarkPanel.add(new JScrollPane(bookmarkList), BorderLayout.CENTER);
+        bookmarkPanel.add(buttonPanel, BorderLayout.SOUTH);
+
+        // 初始化时书签面板默认显示
+        bookmarkPanel.setVisible(true);
+        return bookmarkPanel;
+    }
+
+    @Override
+    public void dispose() {
+        // 标签页注册为子 Disposable，先于面板销毁并归还浏览器，地址和滚动位置仍然保留在标签页中
+        disposed = true;
+        session.close();
+        tabs.clear();
+    }
+}
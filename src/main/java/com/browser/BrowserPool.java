@@ -0,0 +1,99 @@
+package com.browser;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.components.Service;
+import com.intellij.openapi.util.Disposer;
+import com.intellij.ui.jcef.JBCefApp;
+import com.intellij.ui.jcef.JBCefBrowser;
+import com.intellij.ui.jcef.JBCefClient;
+import com.intellij.util.concurrency.AppExecutorUtil;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 应用级的浏览器池：所有项目共用一个 {@link JBCefClient}，归还的浏览器先留在池中复用，
+ * 空闲超过 {@link BrowserSettings.State#idleBrowserTimeoutSeconds} 后再销毁。
+ * <p>
+ * 所有方法都只在 EDT 上调用。
+ */
+@Service(Service.Level.APP)
+public final class BrowserPool implements Disposable {
+
+    private static final String BLANK_URL = "about:blank";
+    // 共享 client 上可同时存在的 JBCefJSQuery 数量，设置后浏览器创建之后也能再创建 JSQuery
+    private static final int JS_QUERY_POOL_SIZE = 64;
+
+    private JBCefClient client;
+    private final Deque<IdleBrowser> idleBrowsers = new ArrayDeque<>();
+
+    private record IdleBrowser(JBCefBrowser browser, ScheduledFuture<?> expiry) {
+    }
+
+    public static BrowserPool getInstance() {
+        return ApplicationManager.getApplication().getService(BrowserPool.class);
+    }
+
+    /**
+     * 取出一个浏览器，池中没有空闲浏览器时新建一个。
+     */
+    JBCefBrowser acquire() {
+        ApplicationManager.getApplication().assertIsDispatchThread();
+        IdleBrowser idle = idleBrowsers.pollFirst();
+        if (idle != null) {
+            idle.expiry().cancel(false);
+            return idle.browser();
+        }
+        return JBCefBrowser.createBuilder()
+                .setClient(getClient())
+                .build();
+    }
+
+    /**
+     * 归还浏览器。调用方需要先移除自己注册在共享 client 上的处理器。
+     */
+    void release(JBCefBrowser browser) {
+        ApplicationManager.getApplication().assertIsDispatchThread();
+        BrowserSettings.State settings = BrowserSettings.getInstance().getState();
+        if (idleBrowsers.size() >= settings.maxIdleBrowsers) {
+            Disposer.dispose(browser);
+            return;
+        }
+        // 释放页面占用的资源，渲染进程随之空闲下来
+        browser.loadURL(BLANK_URL);
+        ScheduledFuture<?> expiry = AppExecutorUtil.getAppScheduledExecutorService().schedule(
+                () -> ApplicationManager.getApplication().invokeLater(() -> expire(browser)),
+                settings.idleBrowserTimeoutSeconds, TimeUnit.SECONDS);
+        idleBrowsers.addFirst(new IdleBrowser(browser, expiry));
+    }
+
+    JBCefClient getClient() {
+        if (client == null) {
+            client = JBCefApp.getInstance().createClient();
+            client.setProperty(JBCefClient.Properties.JS_QUERY_POOL_SIZE, JS_QUERY_POOL_SIZE);
+        }
+        return client;
+    }
+
+    private void expire(JBCefBrowser browser) {
+        if (idleBrowsers.removeIf(idle -> idle.browser() == browser)) {
+            Disposer.dispose(browser);
+        }
+    }
+
+    @Override
+    public void dispose() {
+        for (IdleBrowser idle : idleBrowsers) {
+            idle.expiry().cancel(false);
+            Disposer.dispose(idle.browser());
+        }
+        idleBrowsers.clear();
+        if (client != null) {
+            Disposer.dispose(client);
+            client = null;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.browser;
+
+import org.cef.browser.CefBrowser;
+import org.cef.browser.CefFrame;
+import org.cef.handler.CefRequestHandlerAdapter;
+import org.cef.handler.CefResourceRequestHandler;
+import org.cef.handler.CefResourceRequestHandlerAdapter;
+import org.cef.misc.BoolRef;
+import org.cef.network.CefRequest;
+
+/**
+ * 在请求发出之前进行拦截，广告和跟踪器请求直接取消，不再下载和渲染；节省流量模式（{@link LiteMode}）
+ * 拦截的请求同样取消，需要限制大小的图片和可缓存的请求交给 {@link BrowserCache}。
+ * <p>
+ * 不需要处理的请求返回 null，交给 CEF 默认流程，不会为每个请求额外回调 Java。
+ */
+class BrowserRequestHandler extends CefRequestHandlerAdapter {
+
+    // 取消请求的处理器，无状态，所有请求共用
+    private static final CefResourceRequestHandler CANCEL = new CefResourceRequestHandlerAdapter() {
+        @Override
+        public boolean onBeforeResourceLoad(CefBrowser browser, CefFrame frame, CefRequest request) {
+            return true;
+        }
+    };
+
+    // 请求被拦截时通知标签页，计入当前页面的统计
+    private final Runnable blockedListener;
+
+    BrowserRequestHandler(Runnable blockedListener) {
+        this.blockedListener = blockedListener;
+    }
+
+    @Override
+    public CefResourceRequestHandler getResourceRequestHandler(CefBrowser browser, CefFrame frame, CefRequest request,
+                                                               boolean isNavigation, boolean isDownload,
+                                                               String requestInitiator, BoolRef disableDefaultHandling) {
+        CefRequest.ResourceType type = request.getResourceType();
+        // 下载不拦截也不缓存
+        if (isDownload) {
+            return null;
+        }
+        // 用户主动打开的页面不拦截
+        if (type != CefRequest.ResourceType.RT_MAIN_FRAME) {
+            String documentUrl = requestInitiator != null && !requestInitiator.isEmpty() ? requestInitiator : browser.getURL();
+            if (AdBlocker.getInstance().shouldBlock(request.getURL(), documentUrl, toResourceKind(type))) {
+                blockedListener.run();
+                return CANCEL;
+            }
+            LiteMode liteMode = LiteMode.getInstance();
+            switch (liteMode.check(request.getURL(), documentUrl, browser.getURL(), type)) {
+                case BLOCK -> {
+                    blockedListener.run();
+                    return CANCEL;
+                }
+                case LIMIT_SIZE -> {
+                    return BrowserCache.getInstance().getResourceRequestHandler(browser, request, liteMode.getImageMaxBytes());
+                }
+                default -> {
+                }
+            }
+        }
+        return BrowserCache.getInstance().getResourceRequestHandler(browser, request);
+    }
+
+    static FilterIndex.ResourceKind toResourceKind(CefRequest.ResourceType type) {
+        if (type == null) {
+            return FilterIndex.ResourceKind.OTHER;
+        }
+        return switch (type) {
+            case RT_MAIN_FRAME -> FilterIndex.ResourceKind.DOCUMENT;
+            case RT_SUB_FRAME -> FilterIndex.ResourceKind.SUBDOCUMENT;
+            case RT_SCRIPT, RT_WORKER, RT_SHARED_WORKER, RT_SERVICE_WORKER -> FilterIndex.ResourceKind.SCRIPT;
+            case RT_STYLESHEET -> FilterIndex.ResourceKind.STYLESHEET;
+            case RT_IMAGE, RT_FAVICON -> FilterIndex.ResourceKind.IMAGE;
+            case RT_FONT_RESOURCE -> FilterIndex.ResourceKind.FONT;
+            case RT_MEDIA -> FilterIndex.ResourceKind.MEDIA;
+            case RT_OBJECT, RT_PLUGIN_RESOURCE -> FilterIndex.ResourceKind.OBJECT;
+            case RT_XHR -> FilterIndex.ResourceKind.XMLHTTPREQUEST;
+            case RT_PING, RT_CSP_REPORT -> FilterIndex.ResourceKind.PING;
+            default -> FilterIndex.ResourceKind.OTHER;
+        };
+    }
+}
@@ -0,0 +1,175 @@
+package com.browser;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.components.Service;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.Project;
+import com.intellij.util.Alarm;
+import com.intellij.util.concurrency.AppExecutorUtil;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * 每个项目的浏览器会话：打开的标签页、每个标签页的导航历史位置和滚动位置，重启 IDE 后按原样恢复。
+ * <p>
+ * 会话保存在插件目录下 sessions 文件夹中以项目路径哈希命名的文件里。状态变化后延迟合并写入，
+ * 在后台线程先写临时文件再改名替换；启动时在后台读取，读完之前不写入，避免用空会话覆盖文件。
+ */
+@Service(Service.Level.PROJECT)
+public final class BrowserSession implements Disposable {
+
+    private static final Logger LOG = Logger.getInstance(BrowserSession.class);
+    // 状态变化后延迟写入的时间，滚动和连续跳转只写一次
+    private static final int SAVE_DELAY_MS = 1000;
+    // 关闭时等待最后一次写入的时间
+    private static final long SHUTDOWN_TIMEOUT_MS = 2000;
+
+    /**
+     * 一个标签页保存的状态。
+     */
+    static final class TabState {
+        String url;
+        String title;
+        // 标签页的导航历史和当前所在的位置
+        List<String> history = new ArrayList<>();
+        int index;
+        int scrollX;
+        int scrollY;
+    }
+
+    static final class State {
+        List<TabState> tabs = new ArrayList<>();
+        int selected;
+    }
+
+    private final Path file;
+    // 磁盘读写按顺序在同一个后台线程上执行
+    private final ExecutorService ioExecutor = AppExecutorUtil.createBoundedApplicationPoolExecutor("Browser Session", 1);
+    private final Alarm saveAlarm = new Alarm(Alarm.ThreadToUse.SWING_THREAD, this);
+    // 以下字段只在 EDT 上访问
+    private Supplier<State> source;
+    private boolean loaded;
+    private boolean dirty;
+
+    public BrowserSession(Project project) {
+        file = Paths.get(PathManager.getPluginsPath(), "browser", "sessions", project.getLocationHash() + ".json");
+    }
+
+    public static BrowserSession getInstance(Project project) {
+        return project.getService(BrowserSession.class);
+    }
+
+    /**
+     * 在后台读取保存的会话，读完后在 EDT 上调用 callback，没有保存过或者文件损坏时传入 null。
+     * source 提供当前会话的快照，之后的保存都从这里取。只在 EDT 上调用一次。
+     */
+    void load(Supplier<State> source, Consumer<State> callback) {
+        this.source = source;
+        ioExecutor.execute(() -> {
+            State state = read();
+            ApplicationManager.getApplication().invokeLater(() -> {
+                loaded = true;
+                callback.accept(state);
+                if (dirty) {
+                    scheduleSave();
+                }
+            });
+        });
+    }
+
+    /**
+     * 会话发生变化，延迟一段时间后保存，只在 EDT 上调用。
+     */
+    void scheduleSave() {
+        dirty = true;
+        if (loaded && !saveAlarm.isDisposed()) {
+            saveAlarm.cancelAllRequests();
+            saveAlarm.addRequest(this::save, SAVE_DELAY_MS);
+        }
+    }
+
+    /**
+     * 面板关闭时调用：立即保存尚未写入的变化并等待写完，之后不再从面板取快照。只在 EDT 上调用。
+     */
+    void close() {
+        saveAlarm.cancelAllRequests();
+        Supplier<State> current = source;
+        source = null;
+        if (!loaded || !dirty || current == null) {
+            return;
+        }
+        dirty = false;
+        State snapshot = current.get();
+        try {
+            ioExecutor.submit(() -> write(snapshot)).get(SHUTDOWN_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException | ExecutionException | TimeoutException e) {
+            LOG.warn("Failed to save browser session on close", e);
+        }
+    }
+
+    private void save() {
+        if (!dirty || source == null) {
+            return;
+        }
+        dirty = false;
+        State snapshot = source.get();
+        ioExecutor.execute(() -> write(snapshot));
+    }
+
+    private State read() {
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            State state = new Gson().fromJson(reader, State.class);
+            return state != null && state.tabs != null ? state : null;
+        } catch (NoSuchFileException e) {
+            // 还没有保存过会话
+            return null;
+        } catch (IOException | JsonParseException e) {
+            LOG.warn("Failed to read browser session " + file, e);
+            return null;
+        }
+    }
+
+    private void write(State state) {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            Files.createDirectories(file.getParent());
+            try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                new Gson().toJson(state, writer);
+            }
+            try {
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            LOG.warn("Failed to save browser session", e);
+        }
+    }
+
+    @Override
+    public void dispose() {
+        // 正常情况下面板关闭时已经写入，这里处理面板比项目服务晚销毁的情况
+        close();
+    }
+}
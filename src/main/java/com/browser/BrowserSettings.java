@@ -0,0 +1,82 @@
+package com.browser;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.components.PersistentStateComponent;
+import com.intellij.openapi.components.Service;
+import com.intellij.openapi.components.State;
+import com.intellij.openapi.components.Storage;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 浏览器插件的全局设置，保存在 IDE 配置目录下的 browser.xml 中。
+ */
+@Service(Service.Level.APP)
+@State(name = "BrowserSettings", storages = @Storage("browser.xml"))
+public final class BrowserSettings implements PersistentStateComponent<BrowserSettings.State> {
+
+    public static class State {
+        // 注入脚本每帧处理 DOM 变化的时间预算（毫秒）
+        public int frameBudgetMs = 8;
+        // 空闲浏览器在池中保留的时间（秒），超时后销毁
+        public int idleBrowserTimeoutSeconds = 300;
+        // 池中最多保留的空闲浏览器数量
+        public int maxIdleBrowsers = 2;
+        // 工具窗口隐藏多久（秒）后把页面替换成静态快照，0 表示不替换
+        public int suspendHiddenAfterSeconds = 600;
+        // 每个项目同时保留浏览器的标签页数量，超出的后台标签页按最近最少使用的顺序丢弃
+        public int maxLiveTabs = 5;
+        // 存活标签页 JS 堆总量的上限（MB），0 表示不限制
+        public int tabMemoryBudgetMb = 512;
+        // 深色主题按站点缓存的规则总大小上限（KB）
+        public int themeCacheMaxKb = 4096;
+        // 浏览历史保留的天数，更早的访问在压缩历史日志时丢弃
+        public int historyRetentionDays = 90;
+        // 是否通过插件自己的磁盘缓存加载所有可缓存的请求，关闭时只缓存固定的书签页面
+        public boolean httpCacheEnabled = false;
+        // 磁盘缓存的总大小上限（MB），固定页面的条目不会被淘汰
+        public int httpCacheMaxMb = 256;
+        // IDE 空闲或鼠标停在书签上时，预先连接或预取最常打开的页面；节能模式下不预取
+        public boolean prefetchEnabled = true;
+        // 空闲时预取的最常打开页面数量
+        public int prefetchTopPages = 5;
+        // 同时进行的预取请求数量
+        public int prefetchMaxConcurrent = 2;
+        // 每小时预取下载的总量上限（MB），用完后只预先连接
+        public int prefetchBudgetMbPerHour = 20;
+        // 节省流量模式：拦截网页字体、媒体和第三方脚本，限制图片大小
+        public boolean liteMode = false;
+        // 节省流量模式下单张图片的大小上限（KB），超过时取消下载
+        public int liteImageMaxKb = 100;
+        // 节省流量模式下不受限制的站点主机名，同时包括子域名
+        public List<String> liteModeAllowedSites = new ArrayList<>();
+    }
+
+    private State state = new State();
+    // 深色模式只在本次运行期间有效，不保存
+    private volatile boolean darkMode = false;
+
+    public static BrowserSettings getInstance() {
+        return ApplicationManager.getApplication().getService(BrowserSettings.class);
+    }
+
+    public boolean isDarkMode() {
+        return darkMode;
+    }
+
+    public void setDarkMode(boolean darkMode) {
+        this.darkMode = darkMode;
+    }
+
+    @Override
+    public @NotNull State getState() {
+        return state;
+    }
+
+    @Override
+    public void loadState(@NotNull State state) {
+        this.state = state;
+    }
+}
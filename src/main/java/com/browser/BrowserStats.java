@@ -0,0 +1,130 @@
+package com.browser;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.components.Service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 收集最近的页面加载性能数据，供统计窗口按页面和按站点查看，也可以导出为 JSON。
+ */
+@Service(Service.Level.APP)
+public final class BrowserStats {
+
+    // 保留的页面记录数量，超出后丢弃最早的记录
+    private static final int MAX_PAGES = 200;
+
+    // 注入脚本报告的耗时分项和计数项
+    static final String SCRIPT_FLUSH = "flush";
+    static final String SCRIPT_DARK = "dark";
+    static final String SCRIPT_ADS = "ads";
+    static final String COUNTER_NODES = "nodes";
+    static final String COUNTER_DARKENED = "darkened";
+    static final String COUNTER_ADS_REMOVED = "adsRemoved";
+
+    /**
+     * 一个站点在保留的页面记录中的汇总数据。
+     */
+    static final class OriginStats {
+        final String origin;
+        int pages;
+        int loadedPages;
+        double totalLoadMs;
+        double maxLoadMs;
+        double totalScriptMs;
+        int blockedRequests;
+        long nodes;
+
+        OriginStats(String origin) {
+            this.origin = origin;
+        }
+
+        double getAverageLoadMs() {
+            return loadedPages > 0 ? totalLoadMs / loadedPages : -1;
+        }
+    }
+
+    private final Deque<PageStats> pages = new ArrayDeque<>();
+
+    public static BrowserStats getInstance() {
+        return ApplicationManager.getApplication().getService(BrowserStats.class);
+    }
+
+    /**
+     * 主框架开始加载新页面时调用，返回的记录由标签页继续填充。
+     */
+    PageStats pageStarted(String url) {
+        PageStats page = new PageStats(url);
+        synchronized (pages) {
+            pages.addLast(page);
+            while (pages.size() > MAX_PAGES) {
+                pages.removeFirst();
+            }
+        }
+        return page;
+    }
+
+    /**
+     * 最近的页面记录副本，最新的在前。
+     */
+    List<PageStats> getPages() {
+        List<PageStats> result = new ArrayList<>();
+        synchronized (pages) {
+            pages.descendingIterator().forEachRemaining(page -> result.add(page.copy()));
+        }
+        return result;
+    }
+
+    void clear() {
+        synchronized (pages) {
+            pages.clear();
+        }
+    }
+
+    static List<OriginStats> aggregate(List<PageStats> pages) {
+        Map<String, OriginStats> origins = new LinkedHashMap<>();
+        for (PageStats page : pages) {
+            if (page.origin == null) {
+                continue;
+            }
+            OriginStats stats = origins.computeIfAbsent(page.origin, OriginStats::new);
+            stats.pages++;
+            if (page.getLoadMs() >= 0) {
+                stats.loadedPages++;
+                stats.totalLoadMs += page.getLoadMs();
+                stats.maxLoadMs = Math.max(stats.maxLoadMs, page.getLoadMs());
+            }
+            stats.totalScriptMs += page.getScriptMs(SCRIPT_FLUSH) + page.getScriptMs(SCRIPT_DARK) + page.getScriptMs(SCRIPT_ADS);
+            stats.blockedRequests += page.getBlockedRequests();
+            stats.nodes += page.getCounter(COUNTER_NODES);
+        }
+        return new ArrayList<>(origins.values());
+    }
+
+    /**
+     * 导出全部页面记录和站点汇总。
+     */
+    String toJson() {
+        List<PageStats> snapshot = getPages();
+        Gson gson = new GsonBuilder().setPrettyPrinting().create();
+        JsonObject root = new JsonObject();
+        root.addProperty("exportedAt", System.currentTimeMillis());
+        root.addProperty("blockedRequestsTotal", AdBlocker.getInstance().getBlockedCount());
+        JsonArray pageArray = new JsonArray();
+        snapshot.forEach(page -> pageArray.add(gson.toJsonTree(page)));
+        root.add("pages", pageArray);
+        JsonArray originArray = new JsonArray();
+        aggregate(snapshot).forEach(origin -> originArray.add(gson.toJsonTree(origin)));
+        root.add("origins", originArray);
+        return gson.toJson(root);
+    }
+}
@@ -0,0 +1,139 @@
+package com.browser;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.fileChooser.FileChooserFactory;
+import com.intellij.openapi.fileChooser.FileSaverDescriptor;
+import com.intellij.openapi.ui.DialogWrapper;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.VirtualFileWrapper;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.swing.*;
+import javax.swing.table.DefaultTableModel;
+import java.awt.*;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+/**
+ * 页面性能统计窗口：按页面和按站点列出加载耗时、注入脚本耗时、处理的节点数和拦截的请求数，可以导出为 JSON。
+ */
+class BrowserStatsDialog extends DialogWrapper {
+
+    private static final Logger LOG = Logger.getInstance(BrowserStatsDialog.class);
+    private static final String[] PAGE_COLUMNS = {"URL", "Load (ms)", "Status", "TTFB (ms)", "DOM Ready (ms)",
+            "Flush (ms)", "Dark (ms)", "Ads (ms)", "Nodes", "Darkened", "Ads Removed", "Blocked"};
+    private static final String[] ORIGIN_COLUMNS = {"Origin", "Pages", "Avg Load (ms)", "Max Load (ms)",
+            "Script (ms)", "Nodes", "Blocked"};
+
+    private final DefaultTableModel pageModel = new DefaultTableModel(PAGE_COLUMNS, 0) {
+        @Override
+        public boolean isCellEditable(int row, int column) {
+            return false;
+        }
+    };
+    private final DefaultTableModel originModel = new DefaultTableModel(ORIGIN_COLUMNS, 0) {
+        @Override
+        public boolean isCellEditable(int row, int column) {
+            return false;
+        }
+    };
+
+    BrowserStatsDialog() {
+        super(false);
+        setTitle("Browser Stats");
+        setModal(false);
+        init();
+        refresh();
+    }
+
+    @Override
+    protected @Nullable JComponent createCenterPanel() {
+        JTabbedPane tables = new JTabbedPane();
+        tables.addTab("Pages", new JScrollPane(new JTable(pageModel)));
+        tables.addTab("Origins", new JScrollPane(new JTable(originModel)));
+
+        JButton refreshButton = new JButton("Refresh");
+        refreshButton.addActionListener(e -> refresh());
+        JButton clearButton = new JButton("Clear");
+        clearButton.addActionListener(e -> {
+            BrowserStats.getInstance().clear();
+            refresh();
+        });
+        JButton exportButton = new JButton("Export JSON");
+        exportButton.addActionListener(e -> export());
+        JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        buttonPanel.add(refreshButton);
+        buttonPanel.add(clearButton);
+        buttonPanel.add(exportButton);
+
+        JPanel panel = new JPanel(new BorderLayout());
+        panel.add(tables, BorderLayout.CENTER);
+        panel.add(buttonPanel, BorderLayout.SOUTH);
+        panel.setPreferredSize(new Dimension(900, 400));
+        return panel;
+    }
+
+    @Override
+    protected Action @NotNull [] createActions() {
+        return new Action[]{getOKAction()};
+    }
+
+    private void refresh() {
+        List<PageStats> pages = BrowserStats.getInstance().getPages();
+        pageModel.setRowCount(0);
+        for (PageStats page : pages) {
+            pageModel.addRow(new Object[]{
+                    page.url,
+                    formatMs(page.getLoadMs()),
+                    page.getError() != null ? page.getError() : String.valueOf(page.getHttpStatus()),
+                    formatMs(page.getNavigation("ttfb")),
+                    formatMs(page.getNavigation("domContentLoaded")),
+                    formatMs(page.getScriptMs(BrowserStats.SCRIPT_FLUSH)),
+                    formatMs(page.getScriptMs(BrowserStats.SCRIPT_DARK)),
+                    formatMs(page.getScriptMs(BrowserStats.SCRIPT_ADS)),
+                    page.getCounter(BrowserStats.COUNTER_NODES),
+                    page.getCounter(BrowserStats.COUNTER_DARKENED),
+                    page.getCounter(BrowserStats.COUNTER_ADS_REMOVED),
+                    page.getBlockedRequests()
+            });
+        }
+        originModel.setRowCount(0);
+        for (BrowserStats.OriginStats origin : BrowserStats.aggregate(pages)) {
+            originModel.addRow(new Object[]{
+                    origin.origin,
+                    origin.pages,
+                    formatMs(origin.getAverageLoadMs()),
+                    formatMs(origin.maxLoadMs),
+                    formatMs(origin.totalScriptMs),
+                    origin.nodes,
+                    origin.blockedRequests
+            });
+        }
+    }
+
+    private void export() {
+        FileSaverDescriptor descriptor = new FileSaverDescriptor("Export Browser Stats", "Save page statistics as JSON", "json");
+        VirtualFileWrapper target = FileChooserFactory.getInstance()
+                .createSaveFileDialog(descriptor, getContentPanel())
+                .save((VirtualFile) null, "browser-stats.json");
+        if (target == null) {
+            return;
+        }
+        String json = BrowserStats.getInstance().toJson();
+        ApplicationManager.getApplication().executeOnPooledThread(() -> {
+            try {
+                Files.writeString(target.getFile().toPath(), json, StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                LOG.warn("Failed to export browser stats", e);
+            }
+        });
+    }
+
+    private static String formatMs(double ms) {
+        return ms < 0 ? "-" : String.format("%.1f", ms);
+    }
+}
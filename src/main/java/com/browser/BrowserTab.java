@@ -0,0 +1,806 @@
+package com.browser;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.Disposer;
+import com.intellij.ui.jcef.JBCefBrowser;
+import com.intellij.ui.jcef.JBCefClient;
+import com.intellij.util.Alarm;
+import org.cef.browser.CefBrowser;
+import org.cef.browser.CefFrame;
+import org.cef.handler.CefDisplayHandler;
+import org.cef.handler.CefDisplayHandlerAdapter;
+import org.cef.handler.CefLoadHandler;
+import org.cef.handler.CefLoadHandlerAdapter;
+import org.cef.handler.CefRequestHandler;
+import org.cef.network.CefRequest;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 浏览器面板中的一个标签页，拥有自己的浏览器实例。
+ * <p>
+ * 浏览器在标签页第一次显示时才从 {@link BrowserPool} 中取出。不显示时降低渲染帧率、暂停注入脚本和动画，
+ * 隐藏时间较长时把页面替换成不含脚本的静态快照，再次显示时重新加载。
+ * <p>
+ * 标签页可以被丢弃：浏览器归还给池子，只保留地址、标题、滚动位置和缩略图，用户点击占位页时再按保存的状态恢复。
+ * <p>
+ * 标签页自己记录导航历史，随会话（{@link BrowserSession}）保存。重启后新建的浏览器没有原来的历史，
+ * 后退和前进超出浏览器自己的历史时按记录的地址打开。
+ */
+class BrowserTab implements Disposable {
+
+    private static final Logger LOG = Logger.getInstance(BrowserTab.class);
+    // 隐藏时的离屏渲染帧率，以及显示时恢复的 CEF 默认帧率
+    private static final int HIDDEN_FRAME_RATE = 1;
+    private static final int VISIBLE_FRAME_RATE = 30;
+    // 缩略图宽度
+    private static final int THUMBNAIL_WIDTH = 320;
+    // 等待页面返回滚动位置的最长时间，页面卡住时直接丢弃
+    private static final long STATE_TIMEOUT_MS = 500;
+    // 每个标签页记录的导航历史条数
+    private static final int MAX_HISTORY = 50;
+    private static final Pattern SCRIPT_TAG = Pattern.compile("<script\\b[^>]*>.*?</script\\s*>",
+            Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    private static final Pattern HEAD_TAG = Pattern.compile("<head\\b[^>]*>", Pattern.CASE_INSENSITIVE);
+    private static final Pattern META_REFRESH = Pattern.compile("<meta\\b[^>]*http-equiv\\s*=\\s*[\"']?refresh[^>]*>",
+            Pattern.CASE_INSENSITIVE);
+    // 快照里去掉 script 标签后，内联事件、javascript: 地址和 iframe 仍然可以执行，由 CSP 统一禁止
+    private static final String SNAPSHOT_CSP = "<meta http-equiv=\"Content-Security-Policy\" "
+            + "content=\"script-src 'none'; frame-src 'none'; connect-src 'none'\">";
+
+    // 读取页面的滚动位置和 JS 堆大小，不依赖注入脚本，快照和还没注入脚本的页面也能返回
+    private static final String STATE_EXPRESSION = "JSON.stringify([{ type: 'state', data: { x: Math.round(window.scrollX), "
+            + "y: Math.round(window.scrollY), heap: performance.memory ? performance.memory.usedJSHeapSize : 0 } }])";
+
+    // 隐藏时暂停页面：暂停音视频和 CSS 动画，注入脚本的 DOM 监听通过 suspend 消息停止
+    private static final String PAUSE_SCRIPT = """
+            (function () {
+                document.querySelectorAll('video, audio').forEach(media => media.pause());
+                if (!document.getElementById('idea-browser-paused')) {
+                    const style = document.createElement('style');
+                    style.id = 'idea-browser-paused';
+                    style.textContent = '*, *::before, *::after { animation-play-state: paused !important; }';
+                    (document.head || document.documentElement).appendChild(style);
+                }
+            })();
+            """;
+    // 深色模式下新文档开始加载时盖住页面，等深色主题生效后移除；DOMContentLoaded 和超时作为保底，避免遮罩一直留在页面上
+    private static final String MASK_SCRIPT = """
+            (function () {
+                if (!document.documentElement || document.getElementById('loading-mask')) {
+                    return;
+                }
+                const mask = document.createElement('div');
+                mask.id = 'loading-mask';
+                mask.style.cssText = 'position: fixed; top: 0; left: 0; width: 100%; height: 100%; '
+                    + 'background-color: #2B2B2B; z-index: 9999';
+                document.documentElement.appendChild(mask);
+                const remove = () => mask.remove();
+                document.addEventListener('DOMContentLoaded', remove);
+                setTimeout(remove, 3000);
+            })();
+            """;
+    private static final String REMOVE_MASK_SCRIPT = """
+            (function () {
+                const mask = document.getElementById('loading-mask');
+                if (mask) {
+                    mask.remove();
+                }
+            })();
+            """;
+    private static final String RESUME_SCRIPT = """
+            (function () {
+                const style = document.getElementById('idea-browser-paused');
+                if (style) {
+                    style.remove();
+                }
+            })();
+            """;
+
+    /**
+     * 标签页的地址和标题变化时通知面板，回调都在 EDT 上执行。
+     */
+    interface Listener {
+        void addressChanged(BrowserTab tab, String url);
+
+        void titleChanged(BrowserTab tab, String title);
+
+        void restoreRequested(BrowserTab tab);
+
+        void scrollChanged(BrowserTab tab);
+    }
+
+    private static class PageState {
+        int x;
+        int y;
+        long heap;
+    }
+
+    // 深色主题引擎报告的需要覆盖背景色的选择器
+    private static class ThemeReport {
+        List<String> light;
+        List<String> selected;
+    }
+
+    // 注入脚本报告的一批性能数据，只包含上次报告之后新增的部分
+    private static class MetricsReport {
+        Map<String, Double> navigation;
+        Map<String, PageStats.Timing> timings;
+        Map<String, Long> counters;
+    }
+
+    private final Listener listener;
+    private final JPanel component = new JPanel(new BorderLayout());
+    private final Alarm suspendAlarm = new Alarm(Alarm.ThreadToUse.SWING_THREAD, this);
+    private JBCefBrowser jbCefBrowser;
+    private PageBridge bridge;
+    private CefDisplayHandler displayHandler;
+    private CefLoadHandler loadHandler;
+    private CefRequestHandler requestHandler;
+    private volatile CompletableFuture<PageState> pendingState;
+    // 当前页面的性能统计，由 CEF 线程和 JS 查询回调填充
+    private volatile PageStats currentPage;
+    // 已经注入过脚本的框架，按框架编号记录，框架开始加载新文档时移除
+    private final Map<String, CefFrame> injectedFrames = new ConcurrentHashMap<>();
+
+    private String url;
+    private String title;
+    private int scrollX;
+    private int scrollY;
+    private long heapBytes;
+    private BufferedImage thumbnail;
+    private long lastActiveTime = System.currentTimeMillis();
+    private boolean discarded;
+    // 正在等待页面状态，准备丢弃
+    private boolean discardPending;
+    // 恢复后第一次加载完成时滚动回保存的位置
+    private volatile boolean restoreScroll;
+
+    private boolean showing = false;
+    // 当前显示的是快照时，保存被替换掉的页面地址
+    private volatile String suspendedUrl;
+
+    // 导航历史和当前所在的位置，只在 EDT 上访问
+    private final List<String> history = new ArrayList<>();
+    private int historyIndex = -1;
+    // 当前浏览器自己的历史从 history 的哪一项开始，更早的项只能按地址重新打开
+    private int nativeBase;
+    // 正在通过后退或前进打开的项，地址变化时移到这一项而不是追加新项
+    private int pendingIndex = -1;
+
+    BrowserTab(String url, Listener listener) {
+        this.url = url;
+        this.title = url;
+        this.listener = listener;
+    }
+
+    /**
+     * 按保存的会话恢复标签页，浏览器仍然在第一次显示时才创建，创建后滚动回保存的位置。
+     */
+    BrowserTab(BrowserSession.TabState state, Listener listener) {
+        this(state.url, listener);
+        if (state.title != null) {
+            this.title = state.title;
+        }
+        if (state.history != null && !state.history.isEmpty()) {
+            history.addAll(state.history.subList(Math.max(0, state.history.size() - MAX_HISTORY), state.history.size()));
+            historyIndex = Math.max(0, Math.min(history.size() - 1,
+                    state.index - (state.history.size() - history.size())));
+        }
+        scrollX = state.scrollX;
+        scrollY = state.scrollY;
+        restoreScroll = scrollX != 0 || scrollY != 0;
+    }
+
+    /**
+     * 保存到会话中的状态，只在 EDT 上调用。
+     */
+    BrowserSession.TabState toState() {
+        BrowserSession.TabState state = new BrowserSession.TabState();
+        state.url = url;
+        state.title = title;
+        state.history = new ArrayList<>(history);
+        state.index = Math.max(historyIndex, 0);
+        state.scrollX = scrollX;
+        state.scrollY = scrollY;
+        return state;
+    }
+
+    JComponent getComponent() {
+        return component;
+    }
+
+    String getUrl() {
+        return url;
+    }
+
+    String getTitle() {
+        return title;
+    }
+
+    long getLastActiveTime() {
+        return lastActiveTime;
+    }
+
+    long getHeapBytes() {
+        return heapBytes;
+    }
+
+    boolean isLive() {
+        return jbCefBrowser != null;
+    }
+
+    boolean isDiscarded() {
+        return discarded;
+    }
+
+    /**
+     * 标签页显示或隐藏时调用（工具窗口隐藏或切换到其他标签页），只在 EDT 上调用。
+     */
+    void setShowing(boolean visible) {
+        if (visible == showing) {
+            return;
+        }
+        showing = visible;
+        if (visible) {
+            lastActiveTime = System.currentTimeMillis();
+            discardPending = false;
+            suspendAlarm.cancelAllRequests();
+            if (jbCefBrowser == null) {
+                if (!discarded) {
+                    ensureBrowser();
+                }
+                return;
+            }
+            CefBrowser cefBrowser = jbCefBrowser.getCefBrowser();
+            setRendering(cefBrowser, true);
+            if (suspendedUrl != null) {
+                // 浏览器自己的历史里现在有快照这一项，之后后退到更早的页面时按记录的地址打开
+                nativeBase = Math.max(historyIndex, 0);
+                jbCefBrowser.loadURL(suspendedUrl);
+                suspendedUrl = null;
+            } else {
+                executeInFrames(cefBrowser, RESUME_SCRIPT);
+                bridge.send(cefBrowser, "resume", null);
+            }
+        } else if (jbCefBrowser != null) {
+            captureThumbnail();
+            refreshState();
+            CefBrowser cefBrowser = jbCefBrowser.getCefBrowser();
+            setRendering(cefBrowser, false);
+            executeInFrames(cefBrowser, PAUSE_SCRIPT);
+            bridge.send(cefBrowser, "suspend", null);
+            int delay = BrowserSettings.getInstance().getState().suspendHiddenAfterSeconds;
+            if (delay > 0) {
+                suspendAlarm.addRequest(this::suspendPage, delay * 1000L);
+            }
+        }
+    }
+
+    /**
+     * 隐藏的标签页停止绘制并降低渲染频率：离屏渲染时通知浏览器隐藏并降低帧率，
+     * 窗口模式下通知浏览器的同时隐藏浏览器窗口，Chromium 对不可见的窗口同样会节流。
+     */
+    private void setRendering(CefBrowser cefBrowser, boolean visible) {
+        cefBrowser.wasHidden(!visible);
+        if (jbCefBrowser.isOffScreenRendering()) {
+            cefBrowser.setWindowlessFrameRate(visible ? VISIBLE_FRAME_RATE : HIDDEN_FRAME_RATE);
+        } else {
+            jbCefBrowser.getComponent().setVisible(visible);
+        }
+    }
+
+    /**
+     * 在主框架和所有注入过脚本的子框架中执行脚本，跨域 iframe 里的媒体和动画同样暂停和恢复。
+     */
+    private void executeInFrames(CefBrowser cefBrowser, String script) {
+        cefBrowser.executeJavaScript(script, cefBrowser.getURL(), 0);
+        for (CefFrame frame : injectedFrames.values()) {
+            if (!frame.isMain() && frame.isValid()) {
+                frame.executeJavaScript(script, frame.getURL(), 0);
+            }
+        }
+    }
+
+    void loadURL(String url) {
+        pendingIndex = -1;
+        this.url = url;
+        if (jbCefBrowser == null) {
+            // 被丢弃的标签页打开新地址时不需要恢复滚动位置
+            discarded = false;
+            restoreScroll = false;
+            ensureBrowser();
+        } else {
+            if (suspendedUrl != null) {
+                // 新地址记在当前项之后，从它后退时不经过浏览器历史里的快照
+                nativeBase = historyIndex + 1;
+                suspendedUrl = null;
+            }
+            jbCefBrowser.loadURL(url);
+        }
+    }
+
+    /**
+     * 是否可以后退，以标签页自己记录的历史为准。
+     */
+    boolean canGoBack() {
+        return historyIndex > 0;
+    }
+
+    /**
+     * 后退一页。浏览器自己的历史里还有上一页时由浏览器后退，否则按记录的地址打开，只在 EDT 上调用。
+     * 已经是记录的第一项时不做任何事，浏览器自己的历史里更早的可能是快照页面。
+     */
+    void goBack() {
+        if (!canGoBack()) {
+            return;
+        }
+        CefBrowser cefBrowser = getCefBrowser();
+        if (historyIndex > nativeBase && cefBrowser.canGoBack()) {
+            pendingIndex = historyIndex - 1;
+            cefBrowser.goBack();
+        } else {
+            openHistoryEntry(historyIndex - 1);
+        }
+    }
+
+    /**
+     * 前进一页，规则与 {@link #goBack()} 相同。
+     */
+    void goForward() {
+        CefBrowser cefBrowser = getCefBrowser();
+        if (cefBrowser.canGoForward()) {
+            pendingIndex = historyIndex + 1;
+            cefBrowser.goForward();
+        } else if (historyIndex >= 0 && historyIndex + 1 < history.size()) {
+            openHistoryEntry(historyIndex + 1);
+        }
+    }
+
+    // 按地址打开记录的历史项，浏览器自己的历史从这一项重新开始
+    private void openHistoryEntry(int index) {
+        pendingIndex = index;
+        nativeBase = index;
+        url = history.get(index);
+        suspendedUrl = null;
+        jbCefBrowser.loadURL(url);
+    }
+
+    /**
+     * 主框架的地址变化时更新导航历史，只在 EDT 上调用。
+     */
+    private void recordNavigation(String newUrl) {
+        if (pendingIndex >= 0 && pendingIndex < history.size()) {
+            // 后退或前进的目标，重定向后的地址替换原来的项
+            historyIndex = pendingIndex;
+            history.set(historyIndex, newUrl);
+            pendingIndex = -1;
+            return;
+        }
+        pendingIndex = -1;
+        if (historyIndex >= 0 && newUrl.equals(history.get(historyIndex))) {
+            return;
+        }
+        while (history.size() > historyIndex + 1) {
+            history.remove(history.size() - 1);
+        }
+        history.add(newUrl);
+        historyIndex = history.size() - 1;
+        if (history.size() > MAX_HISTORY) {
+            history.remove(0);
+            historyIndex--;
+            nativeBase--;
+        }
+    }
+
+    CefBrowser getCefBrowser() {
+        if (jbCefBrowser == null) {
+            restore();
+        }
+        return jbCefBrowser.getCefBrowser();
+    }
+
+    /**
+     * 按丢弃时保存的状态重新创建浏览器。
+     */
+    void restore() {
+        if (jbCefBrowser != null) {
+            return;
+        }
+        restoreScroll = discarded || restoreScroll;
+        discarded = false;
+        ensureBrowser();
+    }
+
+    /**
+     * 丢弃标签页：先取回滚动位置，再把浏览器归还给池子，换成占位页。
+     */
+    void discard() {
+        if (jbCefBrowser == null || discardPending) {
+            return;
+        }
+        discardPending = true;
+        captureThumbnail();
+        requestState().whenComplete((state, error) -> ApplicationManager.getApplication().invokeLater(() -> {
+            if (!discardPending || jbCefBrowser == null) {
+                return;
+            }
+            discardPending = false;
+            applyState(state);
+            if (suspendedUrl != null) {
+                url = suspendedUrl;
+                suspendedUrl = null;
+            }
+            releaseBrowser();
+            discarded = true;
+            showPlaceholder();
+        }));
+    }
+
+    /**
+     * 后台刷新滚动位置和 JS 堆大小，供丢弃和内存预算使用。
+     */
+    private void refreshState() {
+        requestState().whenComplete((state, error) -> ApplicationManager.getApplication().invokeLater(() -> applyState(state)));
+    }
+
+    private CompletableFuture<PageState> requestState() {
+        CompletableFuture<PageState> future = new CompletableFuture<>();
+        if (jbCefBrowser == null || bridge == null || suspendedUrl != null) {
+            future.complete(null);
+            return future;
+        }
+        pendingState = future;
+        CefBrowser cefBrowser = jbCefBrowser.getCefBrowser();
+        cefBrowser.executeJavaScript(bridge.inject(STATE_EXPRESSION), cefBrowser.getURL(), 0);
+        return future.completeOnTimeout(null, STATE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private void applyState(PageState state) {
+        if (state != null) {
+            scrollX = state.x;
+            scrollY = state.y;
+            heapBytes = state.heap;
+        }
+    }
+
+    /**
+     * 深色模式切换后通知页面，页面不重新加载，只在 EDT 上调用。还在加载的页面在加载完成时按新的设置注入。
+     */
+    void darkModeChanged() {
+        if (jbCefBrowser == null || bridge == null) {
+            return;
+        }
+        CefBrowser cefBrowser = jbCefBrowser.getCefBrowser();
+        boolean darkMode = BrowserSettings.getInstance().isDarkMode();
+        String origin = ThemeRuleCache.originOf(cefBrowser.getURL());
+        String rules = darkMode ? ThemeRuleCache.getInstance().getRules(origin) : null;
+        JsonObject update = new JsonObject();
+        update.addProperty("darkMode", darkMode);
+        if (rules != null) {
+            update.addProperty("darkRules", rules);
+            update.add("themeSelectors", new Gson().toJsonTree(ThemeRuleCache.getInstance().getSelectors(origin)));
+        }
+        bridge.send(cefBrowser, "config", update);
+    }
+
+    /**
+     * 离屏渲染的浏览器是轻量级组件，可以直接绘制成缩略图；窗口模式的浏览器无法这样截取，保留上一次的缩略图。
+     */
+    private void captureThumbnail() {
+        JComponent browserComponent = jbCefBrowser.getComponent();
+        int width = browserComponent.getWidth();
+        int height = browserComponent.getHeight();
+        if (!jbCefBrowser.isOffScreenRendering() || width <= 0 || height <= 0) {
+            return;
+        }
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        try {
+            browserComponent.paint(graphics);
+        } finally {
+            graphics.dispose();
+        }
+        int thumbnailHeight = Math.max(1, height * THUMBNAIL_WIDTH / width);
+        BufferedImage scaled = new BufferedImage(THUMBNAIL_WIDTH, thumbnailHeight, BufferedImage.TYPE_INT_RGB);
+        Graphics2D scaledGraphics = scaled.createGraphics();
+        try {
+            scaledGraphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            scaledGraphics.drawImage(image, 0, 0, THUMBNAIL_WIDTH, thumbnailHeight, null);
+        } finally {
+            scaledGraphics.dispose();
+        }
+        thumbnail = scaled;
+    }
+
+    /**
+     * 被丢弃的标签页显示的占位页：缩略图、标题和地址，点击后恢复。
+     */
+    private void showPlaceholder() {
+        JPanel placeholder = new JPanel(new BorderLayout());
+        if (thumbnail != null) {
+            placeholder.add(new JLabel(new ImageIcon(thumbnail)), BorderLayout.CENTER);
+        }
+        JPanel infoPanel = new JPanel(new BorderLayout());
+        infoPanel.add(new JLabel(title), BorderLayout.NORTH);
+        infoPanel.add(new JLabel(url), BorderLayout.CENTER);
+        JButton restoreButton = new JButton("Restore");
+        restoreButton.addActionListener(e -> listener.restoreRequested(this));
+        infoPanel.add(restoreButton, BorderLayout.EAST);
+        placeholder.add(infoPanel, BorderLayout.SOUTH);
+        component.removeAll();
+        component.add(placeholder, BorderLayout.CENTER);
+        component.revalidate();
+        component.repaint();
+    }
+
+    /**
+     * 把隐藏已久的页面替换成去掉脚本的静态快照，页面的定时器和网络请求随之全部停止。
+     */
+    private void suspendPage() {
+        if (showing || jbCefBrowser == null || suspendedUrl != null) {
+            return;
+        }
+        String currentUrl = jbCefBrowser.getCefBrowser().getURL();
+        if (currentUrl == null || !currentUrl.startsWith("http")) {
+            return;
+        }
+        jbCefBrowser.getCefBrowser().getSource(source -> ApplicationManager.getApplication().invokeLater(() -> {
+            if (showing || jbCefBrowser == null || suspendedUrl != null) {
+                return;
+            }
+            suspendedUrl = currentUrl;
+            jbCefBrowser.loadHTML(toSnapshot(source, currentUrl), currentUrl);
+        }));
+    }
+
+    private static String toSnapshot(String source, String url) {
+        String html = SCRIPT_TAG.matcher(source).replaceAll("");
+        html = META_REFRESH.matcher(html).replaceAll("");
+        // CSP 放在 head 的最前面，在任何内容之前生效；加上 base，让快照中的相对地址仍然指向原页面
+        String prefix = SNAPSHOT_CSP + "<base href=\"" + url.replace("\"", "&quot;") + "\">";
+        Matcher head = HEAD_TAG.matcher(html);
+        if (head.find()) {
+            return html.substring(0, head.end()) + prefix + html.substring(head.end());
+        }
+        return prefix + html;
+    }
+
+    /**
+     * 确保浏览器已经创建，只在 EDT 上调用。创建后打开标签页当前的地址。
+     */
+    private void ensureBrowser() {
+        if (jbCefBrowser != null) {
+            return;
+        }
+        // 新浏览器没有历史，第一项就是当前所在的位置
+        nativeBase = Math.max(historyIndex, 0);
+        pendingIndex = -1;
+        jbCefBrowser = BrowserPool.getInstance().acquire();
+        JBCefClient jbCefClient = jbCefBrowser.getJBCefClient();
+        CefBrowser cefBrowser = jbCefBrowser.getCefBrowser();
+
+        bridge = new PageBridge(jbCefBrowser);
+        bridge.on("state", PageState.class, state -> {
+            CompletableFuture<PageState> future = pendingState;
+            if (future != null) {
+                future.complete(state);
+            }
+        });
+
+        // 记录页面需要覆盖的选择器。规则按站点持久保存，只接受主框架的报告，
+        // 并且注入时框架所在的站点要和浏览器当前的站点一致，其他站点的页面不能写入这个站点的缓存
+        bridge.onMainFrame("theme", ThemeReport.class, (sender, report) -> {
+            String origin = ThemeRuleCache.originOf(cefBrowser.getURL());
+            if (origin != null && origin.equals(ThemeRuleCache.originOf(sender.url()))) {
+                ThemeRuleCache.getInstance().record(origin, report.light, report.selected);
+            }
+        });
+
+        // 主框架报告的滚动位置，用于恢复会话
+        bridge.onMainFrame("scroll", PageState.class, (sender, state) -> ApplicationManager.getApplication().invokeLater(() -> {
+            if (jbCefBrowser != null && suspendedUrl == null && (state.x != scrollX || state.y != scrollY)) {
+                scrollX = state.x;
+                scrollY = state.y;
+                listener.scrollChanged(this);
+            }
+        }));
+
+        // 注入脚本分批报告的性能数据
+        bridge.on("metrics", MetricsReport.class, report -> {
+            PageStats page = currentPage;
+            if (page != null) {
+                page.merge(report.navigation, report.timings, report.counters);
+            }
+        });
+
+        displayHandler = new CefDisplayHandlerAdapter() {
+            @Override
+            public void onAddressChange(CefBrowser browser, CefFrame frame, String url) {
+                if (frame.isMain()) {
+                    ApplicationManager.getApplication().invokeLater(() -> {
+                        if (suspendedUrl == null) {
+                            BrowserTab.this.url = url;
+                            recordNavigation(url);
+                            listener.addressChanged(BrowserTab.this, url);
+                        }
+                    });
+                    if (suspendedUrl == null) {
+                        BrowserHistory.getInstance().recordVisit(url, null);
+                    }
+                }
+            }
+
+            @Override
+            public void onTitleChange(CefBrowser browser, String title) {
+                if (suspendedUrl == null) {
+                    BrowserHistory.getInstance().recordTitle(browser.getURL(), title);
+                }
+                ApplicationManager.getApplication().invokeLater(() -> {
+                    if (suspendedUrl == null) {
+                        BrowserTab.this.title = title;
+                        listener.titleChanged(BrowserTab.this, title);
+                    }
+                });
+            }
+        };
+        jbCefClient.addDisplayHandler(displayHandler, cefBrowser);
+
+        loadHandler = new CefLoadHandlerAdapter() {
+
+            @Override
+            public void onLoadStart(CefBrowser browser, CefFrame frame, CefRequest.TransitionType transitionType) {
+                // 主框架换了文档，原来的子框架都不存在了
+                if (frame.isMain()) {
+                    injectedFrames.clear();
+                    PageBridge currentBridge = bridge;
+                    if (currentBridge != null) {
+                        currentBridge.pageStarted();
+                    }
+                } else {
+                    injectedFrames.remove(frameId(frame));
+                }
+                // 快照页面不计入统计
+                if (frame.isMain() && suspendedUrl == null) {
+                    currentPage = BrowserStats.getInstance().pageStarted(frame.getURL());
+                }
+                // 新文档开始加载时就注入深色样式表和站点缓存的规则，每个框架的第一帧就是深色的
+                if (BrowserSettings.getInstance().isDarkMode()) {
+                    String rules = ThemeRuleCache.getInstance().getRules(ThemeRuleCache.originOf(frame.getURL()));
+                    frame.executeJavaScript(DarkTheme.earlyScript(rules != null ? rules : ""), frame.getURL(), 0);
+                    // 没有缓存规则的站点先加遮罩。只在新文档开始加载时添加，锚点跳转和 pushState 这类
+                    // 同一文档内的地址变化不会触发 onLoadStart，也就不会再盖上遮罩。快照页面没有脚本，不需要遮罩
+                    if (frame.isMain() && rules == null && suspendedUrl == null) {
+                        frame.executeJavaScript(MASK_SCRIPT, frame.getURL(), 0);
+                    }
+                }
+            }
+
+            @Override
+            public void onLoadEnd(CefBrowser browser, CefFrame frame, int httpStatusCode) {
+                PageStats page = currentPage;
+                if (frame.isMain() && page != null) {
+                    page.loadFinished(httpStatusCode);
+                }
+                if (frame.isMain()) {
+                    frame.executeJavaScript(REMOVE_MASK_SCRIPT, frame.getURL(), 0);
+                }
+                if (frame.isMain() && restoreScroll) {
+                    // 恢复被丢弃前的滚动位置
+                    restoreScroll = false;
+                    browser.executeJavaScript("window.scrollTo(" + scrollX + ", " + scrollY + ");", frame.getURL(), 0);
+                }
+                // 快照页面只保留上面的静态深色样式，不注入脚本：Java 端执行的脚本不受快照内容安全策略的限制
+                if (suspendedUrl == null) {
+                    injectFrame(frame);
+                }
+            }
+
+            @Override
+            public void onLoadError(CefBrowser browser, CefFrame frame, ErrorCode errorCode, String errorText, String failedUrl) {
+                // 被拦截或中途取消的加载（广告、跟踪器和节省流量模式拦截的子框架，以及用户离开页面）不算失败；
+                // 子框架的失败不影响页面，只有主框架的失败才记录
+                if (!frame.isMain() || errorCode == ErrorCode.ERR_ABORTED || errorCode == ErrorCode.ERR_BLOCKED_BY_CLIENT) {
+                    return;
+                }
+                PageStats page = currentPage;
+                if (page != null) {
+                    page.loadFailed(errorCode + " " + errorText);
+                }
+                LOG.warn("Load failed with error code: " + errorCode + ", error text: " + errorText + ", URL: " + failedUrl);
+            }
+        };
+        jbCefClient.addLoadHandler(loadHandler, cefBrowser);
+
+        // 在网络层拦截广告和跟踪器请求
+        requestHandler = new BrowserRequestHandler(() -> {
+            PageStats page = currentPage;
+            if (page != null) {
+                page.requestBlocked();
+            }
+        });
+        jbCefClient.addRequestHandler(requestHandler, cefBrowser);
+
+        // 将 JBCefBrowser 的UI控件设置到标签页中
+        component.removeAll();
+        component.add(jbCefBrowser.getComponent(), BorderLayout.CENTER);
+        component.revalidate();
+        component.repaint();
+
+        jbCefBrowser.loadURL(url);
+    }
+
+    /**
+     * 框架加载完成时向它注入脚本，每个框架的每个文档只注入一次。跨域 iframe 也由 CEF 直接注入，
+     * 页面里的脚本不再遍历子框架。在 CEF 线程上调用。
+     * <p>
+     * 配置、发送消息的函数和接收令牌作为参数传给脚本，不经过页面的全局变量，页面自己的脚本拿不到；
+     * 深色主题是否生效由配置决定，之后通过 {@link #darkModeChanged()} 切换。
+     */
+    private void injectFrame(CefFrame frame) {
+        String frameUrl = frame.getURL();
+        PageBridge currentBridge = bridge;
+        if (frameUrl == null || currentBridge == null || injectedFrames.putIfAbsent(frameId(frame), frame) != null) {
+            return;
+        }
+        // 注入脚本用到的配置，站点已有缓存规则时首次加载的检查跳过规则已经覆盖的元素
+        JsonObject config = new JsonObject();
+        config.addProperty("frameBudgetMs", BrowserSettings.getInstance().getState().frameBudgetMs);
+        config.addProperty("darkMode", BrowserSettings.getInstance().isDarkMode());
+        config.addProperty("darkCss", DarkTheme.CSS);
+        List<String> selectors = ThemeRuleCache.getInstance().getSelectors(ThemeRuleCache.originOf(frameUrl));
+        if (selectors != null) {
+            config.add("themeSelectors", new Gson().toJsonTree(selectors));
+        }
+        config.addProperty("mainFrame", frame.isMain());
+        PageBridge.Channel channel = currentBridge.open(frame);
+        frame.executeJavaScript(PageScripts.BUNDLE + "(" + config + ", " + channel.postFunction() + ", "
+                + new Gson().toJson(channel.receiveToken()) + ");", frameUrl, 0);
+    }
+
+    private static String frameId(CefFrame frame) {
+        return String.valueOf(frame.getIdentifier());
+    }
+
+    private void releaseBrowser() {
+        if (jbCefBrowser == null) {
+            return;
+        }
+        suspendAlarm.cancelAllRequests();
+        JBCefClient jbCefClient = jbCefBrowser.getJBCefClient();
+        CefBrowser cefBrowser = jbCefBrowser.getCefBrowser();
+        jbCefClient.removeDisplayHandler(displayHandler, cefBrowser);
+        jbCefClient.removeLoadHandler(loadHandler, cefBrowser);
+        jbCefClient.removeRequestHandler(requestHandler, cefBrowser);
+        Disposer.dispose(bridge);
+        bridge = null;
+        currentPage = null;
+        injectedFrames.clear();
+        // 放回浏览器池前恢复渲染，下一个标签页拿到的浏览器是正常显示的
+        if (!showing) {
+            setRendering(cefBrowser, true);
+        }
+        component.remove(jbCefBrowser.getComponent());
+        BrowserPool.getInstance().release(jbCefBrowser);
+        jbCefBrowser = null;
+    }
+
+    @Override
+    public void dispose() {
+        releaseBrowser();
+    }
+}
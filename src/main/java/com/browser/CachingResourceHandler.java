@@ -0,0 +1,144 @@
+package com.browser;
+
+import org.cef.callback.CefCallback;
+import org.cef.handler.CefLoadHandler;
+import org.cef.handler.CefResourceHandlerAdapter;
+import org.cef.misc.IntRef;
+import org.cef.misc.StringRef;
+import org.cef.network.CefRequest;
+import org.cef.network.CefResponse;
+
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * 通过 {@link HttpDiskCache} 加载一个请求。需要走网络时通过 {@link CefNetwork} 发出，和页面共用 Cookie、代理和登录状态。
+ * <p>
+ * 响应体完整读到内存后才交给 CEF，因此只用于文档、脚本、样式、图片和字体这类一次读完的资源，
+ * XHR、EventSource、媒体和下载不经过这里（见 {@link BrowserCache#getResourceRequestHandler}）。
+ * <p>
+ * 没有缓存时直接从网络读取，只用来限制响应大小：响应体超过上限时取消请求，页面得到一个失败的请求。
+ */
+class CachingResourceHandler extends CefResourceHandlerAdapter {
+
+    private final HttpDiskCache cache;
+    private final String pageUrl;
+    private final long maxBytes;
+    private volatile HttpDiskCache.Response response;
+    private volatile CefNetwork network;
+    private volatile boolean canceled;
+    private String requestUrl;
+    private int offset;
+
+    /**
+     * @param cache    磁盘缓存，为 null 时不经过缓存
+     * @param maxBytes 响应体的大小上限，不限制时为 {@link Long#MAX_VALUE}
+     */
+    CachingResourceHandler(HttpDiskCache cache, String pageUrl, long maxBytes) {
+        this.cache = cache;
+        this.pageUrl = pageUrl;
+        this.maxBytes = maxBytes;
+    }
+
+    @Override
+    public boolean processRequest(CefRequest request, CefCallback callback) {
+        requestUrl = request.getURL();
+        Map<String, String> headers = new HashMap<>();
+        request.getHeaderMap(headers);
+        network = new CefNetwork("GET", request.getReferrerURL(), request.getReferrerPolicy(), maxBytes);
+        Consumer<HttpDiskCache.Response> done = result -> {
+            if (canceled) {
+                return;
+            }
+            if (result == null) {
+                callback.cancel();
+                return;
+            }
+            response = result;
+            callback.Continue();
+        };
+        if (cache != null) {
+            cache.load(requestUrl, headers, pageUrl, network, done);
+            return true;
+        }
+        network.fetch(requestUrl, headers, new HttpDiskCache.NetworkCallback() {
+            @Override
+            public void completed(int status, String statusText, Map<String, String> headers, byte[] body) {
+                done.accept(new HttpDiskCache.Response(status, statusText, HttpDiskCache.bufferedHeaders(headers), body,
+                        HttpDiskCache.Source.NETWORK));
+            }
+
+            @Override
+            public void failed(String error) {
+                done.accept(null);
+            }
+        });
+        return true;
+    }
+
+    @Override
+    public void getResponseHeaders(CefResponse cefResponse, IntRef responseLength, StringRef redirectUrl) {
+        HttpDiskCache.Response result = response;
+        if (result == null) {
+            cefResponse.setError(CefLoadHandler.ErrorCode.ERR_FAILED);
+            responseLength.set(0);
+            return;
+        }
+        cefResponse.setStatus(result.status());
+        cefResponse.setStatusText(result.statusText());
+        Map<String, String> headers = new HashMap<>(result.headers());
+        cefResponse.setMimeType(mimeTypeOf(headers));
+        cefResponse.setHeaderMap(headers);
+        responseLength.set(result.body().length);
+        String location = headers.entrySet().stream()
+                .filter(header -> header.getKey().equalsIgnoreCase("Location"))
+                .map(Map.Entry::getValue)
+                .findFirst()
+                .orElse(null);
+        if (result.status() >= 300 && result.status() < 400 && location != null) {
+            try {
+                redirectUrl.set(URI.create(requestUrl).resolve(location).toString());
+            } catch (IllegalArgumentException e) {
+                redirectUrl.set(location);
+            }
+        }
+    }
+
+    @Override
+    public boolean readResponse(byte[] dataOut, int bytesToRead, IntRef bytesRead, CefCallback callback) {
+        HttpDiskCache.Response result = response;
+        if (result == null || offset >= result.body().length) {
+            bytesRead.set(0);
+            return false;
+        }
+        int length = Math.min(bytesToRead, result.body().length - offset);
+        System.arraycopy(result.body(), offset, dataOut, 0, length);
+        offset += length;
+        bytesRead.set(length);
+        return true;
+    }
+
+    @Override
+    public void cancel() {
+        canceled = true;
+        CefNetwork current = network;
+        if (current != null) {
+            current.cancel();
+        }
+        response = null;
+    }
+
+    private static String mimeTypeOf(Map<String, String> headers) {
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            if (header.getKey().equalsIgnoreCase("Content-Type")) {
+                String value = header.getValue();
+                int semicolon = value.indexOf(';');
+                return (semicolon >= 0 ? value.substring(0, semicolon) : value).trim().toLowerCase(Locale.ROOT);
+            }
+        }
+        return "application/octet-stream";
+    }
+}
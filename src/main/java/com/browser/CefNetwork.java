@@ -0,0 +1,133 @@
+package com.browser;
+
+import org.cef.callback.CefAuthCallback;
+import org.cef.callback.CefURLRequestClient;
+import org.cef.network.CefRequest;
+import org.cef.network.CefResponse;
+import org.cef.network.CefURLRequest;
+
+import java.io.ByteArrayOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 通过 CefURLRequest 发出请求，和页面共用 Cookie、代理、登录状态和连接。
+ * 重定向不跟随，3xx 响应原样交给调用方。每个实例同一时间只发出一个请求。
+ */
+class CefNetwork implements HttpDiskCache.Network {
+
+    private final String method;
+    private final String referrer;
+    private final CefRequest.ReferrerPolicy referrerPolicy;
+    // 响应体超过这个大小时取消请求
+    private final long maxBytes;
+    private volatile CefURLRequest urlRequest;
+    private volatile long receivedBytes;
+
+    CefNetwork(String method, String referrer, CefRequest.ReferrerPolicy referrerPolicy, long maxBytes) {
+        this.method = method;
+        this.referrer = referrer;
+        this.referrerPolicy = referrerPolicy;
+        this.maxBytes = maxBytes;
+    }
+
+    @Override
+    public void fetch(String url, Map<String, String> headers, HttpDiskCache.NetworkCallback callback) {
+        CefRequest request = CefRequest.create();
+        request.setURL(url);
+        request.setMethod(method);
+        // Referer 不能通过请求头设置
+        Map<String, String> requestHeaders = new HashMap<>();
+        headers.forEach((name, value) -> {
+            if (!name.equalsIgnoreCase("Referer")) {
+                requestHeaders.put(name, value);
+            }
+        });
+        request.setHeaderMap(requestHeaders);
+        if (referrer != null && !referrer.isEmpty()) {
+            request.setReferrer(referrer, referrerPolicy);
+        }
+        // 重定向交回给 CEF 处理，页面的地址才会跟着变化
+        request.setFlags(CefRequest.CefUrlRequestFlags.UR_FLAG_ALLOW_STORED_CREDENTIALS
+                | CefRequest.CefUrlRequestFlags.UR_FLAG_STOP_ON_REDIRECT);
+        urlRequest = CefURLRequest.create(request, new Client(callback));
+    }
+
+    void cancel() {
+        CefURLRequest request = urlRequest;
+        if (request != null) {
+            request.cancel();
+        }
+    }
+
+    long getReceivedBytes() {
+        return receivedBytes;
+    }
+
+    /**
+     * 收集响应，完成后交给回调。
+     */
+    private class Client implements CefURLRequestClient {
+
+        private final HttpDiskCache.NetworkCallback callback;
+        private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        private long nativeRef;
+
+        Client(HttpDiskCache.NetworkCallback callback) {
+            this.callback = callback;
+        }
+
+        @Override
+        public void onRequestComplete(CefURLRequest request) {
+            CefResponse response = request.getResponse();
+            int status = response != null ? response.getStatus() : 0;
+            // 因为不跟随重定向而结束的请求也算完成
+            boolean redirected = status >= 300 && status < 400;
+            if (request.getRequestStatus() != CefURLRequest.Status.UR_SUCCESS && !redirected || status == 0) {
+                callback.failed(String.valueOf(request.getRequestError()));
+                return;
+            }
+            Map<String, String> headers = new HashMap<>();
+            response.getHeaderMap(headers);
+            callback.completed(status, response.getStatusText(), headers, body.toByteArray());
+        }
+
+        @Override
+        public void onUploadProgress(CefURLRequest request, int current, int total) {
+        }
+
+        @Override
+        public void onDownloadProgress(CefURLRequest request, int current, int total) {
+            // 响应头给出了长度时不等下载就取消，total 未知时为 -1；HEAD 请求没有响应体
+            if (total > maxBytes && !"HEAD".equals(method)) {
+                request.cancel();
+            }
+        }
+
+        @Override
+        public void onDownloadData(CefURLRequest request, byte[] data, int dataLength) {
+            receivedBytes += dataLength;
+            if (receivedBytes > maxBytes) {
+                request.cancel();
+                return;
+            }
+            body.write(data, 0, dataLength);
+        }
+
+        @Override
+        public boolean getAuthCredentials(boolean isProxy, String host, int port, String realm, String scheme,
+                                          CefAuthCallback callback) {
+            return false;
+        }
+
+        @Override
+        public synchronized void setNativeRef(String identifier, long nativeRef) {
+            this.nativeRef = nativeRef;
+        }
+
+        @Override
+        public synchronized long getNativeRef(String identifier) {
+            return nativeRef;
+        }
+    }
+}
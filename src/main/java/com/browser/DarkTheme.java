@@ -0,0 +1,45 @@
+package com.browser;
+
+import com.google.gson.Gson;
+
+import java.util.Collection;
+
+/**
+ * 深色主题的样式表，以及在页面开始加载时提前注入样式表的脚本。
+ */
+final class DarkTheme {
+
+    static final String STYLE_ID = "idea-browser-dark-style";
+    static final String DARK_BACKGROUND = "#2B2B2B";
+    static final String SELECTED_BACKGROUND = "#214283";
+
+    // 深色主题的基础样式表
+    static final String CSS = PageScripts.DARK_CSS;
+
+    private DarkTheme() {
+    }
+
+    /**
+     * 生成在页面开始加载时注入的脚本，样式表由基础样式和该站点缓存的规则组成。
+     */
+    static String earlyScript(String cachedRules) {
+        Gson gson = new Gson();
+        return PageScripts.EARLY_STYLE + "(" + gson.toJson(STYLE_ID) + ", " + gson.toJson(CSS + cachedRules) + ");";
+    }
+
+    /**
+     * 把记录下来的选择器生成为覆盖背景色的规则，每个选择器单独一条规则，一个无效的选择器只让它自己的规则失效。
+     */
+    static String rules(Collection<String> light, Collection<String> selected) {
+        StringBuilder css = new StringBuilder();
+        appendRule(css, light, DARK_BACKGROUND);
+        appendRule(css, selected, SELECTED_BACKGROUND);
+        return css.toString();
+    }
+
+    private static void appendRule(StringBuilder css, Collection<String> selectors, String background) {
+        for (String selector : selectors) {
+            css.append(selector).append(" { background-color: ").append(background).append(" !important; }\n");
+        }
+    }
+}
@@ -0,0 +1,568 @@
+package com.browser;
+
+import com.google.common.net.InternetDomainName;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * 编译后的广告/跟踪器过滤规则索引，支持 EasyList 风格的规则和 hosts 文件格式。
+ * <p>
+ * 纯域名规则（{@code ||example.com^}、{@code 0.0.0.0 example.com}）放进哈希表，按域名后缀逐级查找；
+ * 其余 URL 规则取最长的字面片段建 Aho-Corasick 自动机，扫描一遍 URL 找出候选规则后再逐条校验。
+ * 元素隐藏规则（{@code ##}）、正则规则和带有不支持选项的规则会被忽略。
+ * <p>
+ * 编译完成后的索引是不可变的，可以在 CEF 的 IO 线程上并发查询。
+ */
+final class FilterIndex {
+
+    // 主机名对应的可注册域名，第三方判断每个请求都要用到；超过上限时清空重来
+    private static final Map<String, String> BASE_DOMAINS = new ConcurrentHashMap<>();
+    private static final int MAX_CACHED_BASE_DOMAINS = 4096;
+
+    static final FilterIndex EMPTY = compile(List.of());
+
+    // 字面片段短于这个长度的规则放不进自动机，只能逐条匹配
+    private static final int MIN_FRAGMENT_LENGTH = 3;
+
+    /**
+     * 请求的资源类型，对应过滤规则里的类型选项。
+     */
+    enum ResourceKind {
+        DOCUMENT("document"),
+        SUBDOCUMENT("subdocument"),
+        SCRIPT("script"),
+        STYLESHEET("stylesheet"),
+        IMAGE("image"),
+        FONT("font"),
+        MEDIA("media"),
+        OBJECT("object"),
+        XMLHTTPREQUEST("xmlhttprequest"),
+        PING("ping"),
+        WEBSOCKET("websocket"),
+        OTHER("other");
+
+        private final String option;
+
+        ResourceKind(String option) {
+            this.option = option;
+        }
+
+        private int bit() {
+            return 1 << ordinal();
+        }
+
+        private static ResourceKind fromOption(String option) {
+            for (ResourceKind kind : values()) {
+                if (kind.option.equals(option)) {
+                    return kind;
+                }
+            }
+            return null;
+        }
+    }
+
+    private final RuleSet blocking;
+    private final RuleSet exceptions;
+    // 带 $document 的例外规则：命中的页面整页不拦截
+    private final DomainTable<Boolean> documentExceptions;
+    private final int ruleCount;
+
+    private FilterIndex(RuleSet blocking, RuleSet exceptions, DomainTable<Boolean> documentExceptions, int ruleCount) {
+        this.blocking = blocking;
+        this.exceptions = exceptions;
+        this.documentExceptions = documentExceptions;
+        this.ruleCount = ruleCount;
+    }
+
+    /**
+     * 编译规则文本，每个元素是规则文件中的一行。
+     */
+    static FilterIndex compile(Iterable<String> lines) {
+        RuleSet.Builder blocking = new RuleSet.Builder();
+        RuleSet.Builder exceptions = new RuleSet.Builder();
+        Map<String, Boolean> documentExceptions = new HashMap<>();
+        int count = 0;
+        for (String raw : lines) {
+            String line = raw.trim();
+            if (line.isEmpty() || line.startsWith("!") || line.startsWith("[") || line.startsWith("#")
+                    || line.contains("##") || line.contains("#@#") || line.contains("#?#") || line.contains("#$#")) {
+                continue;
+            }
+            String hostsEntry = parseHostsEntry(line);
+            if (hostsEntry != null) {
+                blocking.addDomain(hostsEntry, Rule.ANY);
+                count++;
+                continue;
+            }
+            boolean exception = line.startsWith("@@");
+            if (exception) {
+                line = line.substring(2);
+            }
+            Rule rule = Rule.parse(line);
+            if (rule == null) {
+                continue;
+            }
+            if (exception && rule.document) {
+                String domain = rule.pureDomain();
+                if (domain != null) {
+                    documentExceptions.put(domain, Boolean.TRUE);
+                    count++;
+                }
+                continue;
+            }
+            (exception ? exceptions : blocking).add(rule);
+            count++;
+        }
+        return new FilterIndex(blocking.build(), exceptions.build(), new DomainTable<>(documentExceptions), count);
+    }
+
+    int getRuleCount() {
+        return ruleCount;
+    }
+
+    /**
+     * 判断请求是否应当被拦截。
+     *
+     * @param url         请求地址
+     * @param documentUrl 发起请求的页面地址，未知时为 null
+     * @param kind        资源类型
+     */
+    boolean shouldBlock(String url, String documentUrl, ResourceKind kind) {
+        String lowerUrl = url.toLowerCase(Locale.ROOT);
+        String host = hostOf(lowerUrl);
+        if (host == null) {
+            return false;
+        }
+        String documentHost = documentUrl == null ? null : hostOf(documentUrl.toLowerCase(Locale.ROOT));
+        if (documentHost != null && documentExceptions.anyMatch(documentHost, value -> value)) {
+            return false;
+        }
+        boolean thirdParty = documentHost != null && !sameBaseDomain(host, documentHost);
+        Request request = new Request(lowerUrl, host, documentHost, thirdParty, kind);
+        return blocking.matches(request) && !exceptions.matches(request);
+    }
+
+    /**
+     * 取出 URL 中的主机名，不是 http(s)/ws(s) 这类带主机的地址时返回 null。
+     */
+    static String hostOf(String url) {
+        int scheme = url.indexOf("://");
+        if (scheme <= 0) {
+            return null;
+        }
+        int start = scheme + 3;
+        int end = start;
+        while (end < url.length()) {
+            char c = url.charAt(end);
+            if (c == '/' || c == '?' || c == '#') {
+                break;
+            }
+            end++;
+        }
+        String authority = url.substring(start, end);
+        int at = authority.lastIndexOf('@');
+        if (at >= 0) {
+            authority = authority.substring(at + 1);
+        }
+        int colon = authority.lastIndexOf(':');
+        if (colon >= 0 && authority.indexOf(']') < colon) {
+            authority = authority.substring(0, colon);
+        }
+        return authority.isEmpty() ? null : authority;
+    }
+
+    /**
+     * 两个主机是否属于同一个可注册域名（按公共后缀列表，例如 www.ibm.de 和 ibm.de、a.example.co.uk 和 example.co.uk）。
+     */
+    static boolean sameBaseDomain(String host, String other) {
+        return host.equals(other) || baseDomain(host).equals(baseDomain(other));
+    }
+
+    /**
+     * 主机的可注册域名，用平台自带的 Guava {@link InternetDomainName} 查公共后缀列表。
+     * IP 地址、localhost 这类没有公共后缀的主机返回主机本身。
+     */
+    static String baseDomain(String host) {
+        String cached = BASE_DOMAINS.get(host);
+        if (cached != null) {
+            return cached;
+        }
+        String baseDomain = host;
+        if (InternetDomainName.isValid(host)) {
+            InternetDomainName name = InternetDomainName.from(host);
+            if (name.isUnderPublicSuffix()) {
+                baseDomain = name.topPrivateDomain().toString();
+            }
+        }
+        if (BASE_DOMAINS.size() >= MAX_CACHED_BASE_DOMAINS) {
+            BASE_DOMAINS.clear();
+        }
+        BASE_DOMAINS.put(host, baseDomain);
+        return baseDomain;
+    }
+
+    private static String parseHostsEntry(String line) {
+        if (!line.startsWith("0.0.0.0 ") && !line.startsWith("127.0.0.1 ")) {
+            return null;
+        }
+        String[] parts = line.split("\\s+");
+        if (parts.length < 2 || parts[1].equals("localhost") || parts[1].equals("0.0.0.0")) {
+            return null;
+        }
+        return parts[1].toLowerCase(Locale.ROOT);
+    }
+
+    private record Request(String url, String host, String documentHost, boolean thirdParty, ResourceKind kind) {
+    }
+
+    /**
+     * 一组同类规则（拦截或例外）的索引。
+     */
+    private static final class RuleSet {
+
+        private final DomainTable<Rule[]> domainRules;
+        private final MultiPatternMatcher matcher;
+        private final Rule[] patternRules;
+        private final Rule[] slowRules;
+
+        private RuleSet(DomainTable<Rule[]> domainRules, MultiPatternMatcher matcher,
+                        Rule[] patternRules, Rule[] slowRules) {
+            this.domainRules = domainRules;
+            this.matcher = matcher;
+            this.patternRules = patternRules;
+            this.slowRules = slowRules;
+        }
+
+        boolean matches(Request request) {
+            if (domainRules.anyMatch(request.host, rules -> {
+                for (Rule rule : rules) {
+                    if (rule.appliesTo(request)) {
+                        return true;
+                    }
+                }
+                return false;
+            })) {
+                return true;
+            }
+            if (patternRules.length > 0
+                    && matcher.search(request.url, id -> patternRules[id].matches(request))) {
+                return true;
+            }
+            for (Rule rule : slowRules) {
+                if (rule.matches(request)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static final class Builder {
+
+            private final Map<String, List<Rule>> domainRules = new HashMap<>();
+            private final List<String> fragments = new ArrayList<>();
+            private final List<Rule> patternRules = new ArrayList<>();
+            private final List<Rule> slowRules = new ArrayList<>();
+
+            void add(Rule rule) {
+                String domain = rule.pureDomain();
+                if (domain != null) {
+                    addDomain(domain, rule);
+                } else if (rule.fragment.length() >= MIN_FRAGMENT_LENGTH) {
+                    fragments.add(rule.fragment);
+                    patternRules.add(rule);
+                } else {
+                    slowRules.add(rule);
+                }
+            }
+
+            void addDomain(String domain, Rule rule) {
+                domainRules.computeIfAbsent(domain, key -> new ArrayList<>(1)).add(rule);
+            }
+
+            RuleSet build() {
+                Map<String, Rule[]> compiled = new HashMap<>();
+                domainRules.forEach((domain, rules) -> compiled.put(domain, rules.toArray(new Rule[0])));
+                return new RuleSet(new DomainTable<>(compiled), MultiPatternMatcher.build(fragments),
+                        patternRules.toArray(new Rule[0]), slowRules.toArray(new Rule[0]));
+            }
+        }
+    }
+
+    /**
+     * 按域名后缀查找的哈希表。查询时从主机名末尾倒着累加 {@link String#hashCode()}，
+     * 每到一个标签边界就探测一次，整个过程不创建任何子串。
+     */
+    private static final class DomainTable<V> {
+
+        private final String[] domains;
+        private final int[] hashes;
+        private final Object[] values;
+
+        DomainTable(Map<String, V> entries) {
+            int capacity = Integer.highestOneBit(Math.max(4, entries.size() * 2 - 1)) << 1;
+            domains = new String[capacity];
+            hashes = new int[capacity];
+            values = new Object[capacity];
+            entries.forEach((domain, value) -> {
+                int hash = domain.hashCode();
+                int slot = mix(hash) & (capacity - 1);
+                while (domains[slot] != null) {
+                    slot = (slot + 1) & (capacity - 1);
+                }
+                domains[slot] = domain;
+                hashes[slot] = hash;
+                values[slot] = value;
+            });
+        }
+
+        /**
+         * 依次检查主机名本身及其各级父域名，对命中的值调用 predicate，任意一次返回 true 即返回 true。
+         */
+        @SuppressWarnings("unchecked")
+        boolean anyMatch(String host, Predicate<V> predicate) {
+            int hash = 0;
+            int power = 1;
+            int mask = domains.length - 1;
+            for (int i = host.length() - 1; i >= 0; i--) {
+                hash += host.charAt(i) * power;
+                power *= 31;
+                if (i > 0 && host.charAt(i - 1) != '.') {
+                    continue;
+                }
+                int length = host.length() - i;
+                for (int slot = mix(hash) & mask; domains[slot] != null; slot = (slot + 1) & mask) {
+                    String domain = domains[slot];
+                    if (hashes[slot] == hash && domain.length() == length && host.startsWith(domain, i)
+                            && predicate.test((V) values[slot])) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        private static int mix(int hash) {
+            return hash ^ (hash >>> 16);
+        }
+    }
+
+    /**
+     * 一条网络过滤规则。
+     */
+    private static final class Rule {
+
+        // hosts 文件条目以及不带任何选项的域名规则共用的实例
+        static final Rule ANY = new Rule("", "", null, 0, 0, null, null, false);
+
+        private final String pattern;
+        private final String fragment;
+        private final Boolean thirdParty;
+        private final int includeKinds;
+        private final int excludeKinds;
+        private final String[] includeDomains;
+        private final String[] excludeDomains;
+        private final boolean document;
+        // 只有在自动机命中后才需要，按需编译
+        private volatile Pattern regex;
+
+        private Rule(String pattern, String fragment, Boolean thirdParty, int includeKinds, int excludeKinds,
+                     String[] includeDomains, String[] excludeDomains, boolean document) {
+            this.pattern = pattern;
+            this.fragment = fragment;
+            this.thirdParty = thirdParty;
+            this.includeKinds = includeKinds;
+            this.excludeKinds = excludeKinds;
+            this.includeDomains = includeDomains;
+            this.excludeDomains = excludeDomains;
+            this.document = document;
+        }
+
+        /**
+         * 解析一行规则（已去掉 {@code @@} 前缀），不支持的规则返回 null。
+         */
+        static Rule parse(String line) {
+            if (line.startsWith("/") && line.endsWith("/") && line.length() > 1) {
+                // 正则规则开销不可控，不支持
+                return null;
+            }
+            String pattern = line;
+            Boolean thirdParty = null;
+            int includeKinds = 0;
+            int excludeKinds = 0;
+            List<String> includeDomains = new ArrayList<>();
+            List<String> excludeDomains = new ArrayList<>();
+            boolean document = false;
+            int dollar = line.lastIndexOf('$');
+            if (dollar >= 0) {
+                pattern = line.substring(0, dollar);
+                for (String option : line.substring(dollar + 1).toLowerCase(Locale.ROOT).split(",")) {
+                    boolean negated = option.startsWith("~");
+                    String name = negated ? option.substring(1) : option;
+                    ResourceKind kind = ResourceKind.fromOption(name);
+                    if (kind != null) {
+                        if (negated) {
+                            excludeKinds |= kind.bit();
+                        } else {
+                            includeKinds |= kind.bit();
+                        }
+                        document |= kind == ResourceKind.DOCUMENT && !negated;
+                    } else if (name.equals("third-party") || name.equals("3p")) {
+                        thirdParty = !negated;
+                    } else if (name.equals("first-party") || name.equals("1p")) {
+                        thirdParty = negated;
+                    } else if (name.startsWith("domain=")) {
+                        for (String domain : name.substring("domain=".length()).split("\\|")) {
+                            if (domain.startsWith("~")) {
+                                excludeDomains.add(domain.substring(1));
+                            } else if (!domain.isEmpty()) {
+                                includeDomains.add(domain);
+                            }
+                        }
+                    } else if (name.equals("subdocument") || name.equals("frame")) {
+                        includeKinds |= ResourceKind.SUBDOCUMENT.bit();
+                    } else if (!name.equals("match-case") && !name.equals("important") && !name.equals("all")) {
+                        // 其余选项（redirect、csp、removeparam、popup 等）无法在请求层面正确实现，整条跳过
+                        return null;
+                    }
+                }
+            }
+            pattern = pattern.toLowerCase(Locale.ROOT);
+            return new Rule(pattern, longestFragment(pattern), thirdParty, includeKinds, excludeKinds,
+                    includeDomains.isEmpty() ? null : includeDomains.toArray(new String[0]),
+                    excludeDomains.isEmpty() ? null : excludeDomains.toArray(new String[0]), document);
+        }
+
+        /**
+         * {@code ||example.com^} 这类只针对域名的规则返回域名，否则返回 null。
+         */
+        String pureDomain() {
+            if (!pattern.startsWith("||")) {
+                return null;
+            }
+            int end = pattern.endsWith("^") ? pattern.length() - 1 : pattern.length();
+            String domain = pattern.substring(2, end);
+            if (domain.isEmpty()) {
+                return null;
+            }
+            for (int i = 0; i < domain.length(); i++) {
+                char c = domain.charAt(i);
+                if (!(c >= 'a' && c <= 'z' || c >= '0' && c <= '9' || c == '.' || c == '-' || c == '_')) {
+                    return null;
+                }
+            }
+            return domain;
+        }
+
+        boolean matches(Request request) {
+            return appliesTo(request) && matchesUrl(request.url);
+        }
+
+        /**
+         * 检查选项（第三方、资源类型、domain=）是否允许这条规则作用于当前请求。
+         */
+        boolean appliesTo(Request request) {
+            if (thirdParty != null && thirdParty != request.thirdParty) {
+                return false;
+            }
+            int bit = request.kind.bit();
+            if (includeKinds != 0 && (includeKinds & bit) == 0 || (excludeKinds & bit) != 0) {
+                return false;
+            }
+            if (includeDomains != null && !anyDomainMatches(includeDomains, request.documentHost)) {
+                return false;
+            }
+            return excludeDomains == null || !anyDomainMatches(excludeDomains, request.documentHost);
+        }
+
+        private boolean matchesUrl(String url) {
+            if (pattern.isEmpty()) {
+                return true;
+            }
+            if (pattern.equals(fragment)) {
+                return url.contains(fragment);
+            }
+            Pattern compiled = regex;
+            if (compiled == null) {
+                compiled = toRegex(pattern);
+                regex = compiled;
+            }
+            return compiled.matcher(url).find();
+        }
+
+        private static boolean anyDomainMatches(String[] domains, String host) {
+            if (host == null) {
+                return false;
+            }
+            for (String domain : domains) {
+                if (host.equals(domain) || host.endsWith(domain) && host.charAt(host.length() - domain.length() - 1) == '.') {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static String longestFragment(String pattern) {
+            String longest = "";
+            int start = 0;
+            for (int i = 0; i <= pattern.length(); i++) {
+                if (i == pattern.length() || isSpecial(pattern.charAt(i))) {
+                    if (i - start > longest.length()) {
+                        longest = pattern.substring(start, i);
+                    }
+                    start = i + 1;
+                }
+            }
+            return longest;
+        }
+
+        private static boolean isSpecial(char c) {
+            return c == '*' || c == '^' || c == '|';
+        }
+
+        /**
+         * 把 EasyList 通配语法翻译成正则：{@code ||} 匹配域名开头，{@code |} 锚定首尾，
+         * {@code ^} 匹配分隔符或结尾，{@code *} 匹配任意字符。
+         */
+        private static Pattern toRegex(String pattern) {
+            StringBuilder regex = new StringBuilder();
+            int start = 0;
+            int end = pattern.length();
+            if (pattern.startsWith("||")) {
+                regex.append("^[a-z][a-z0-9+.-]*://([^/?#]*\\.)?");
+                start = 2;
+            } else if (pattern.startsWith("|")) {
+                regex.append('^');
+                start = 1;
+            }
+            boolean anchoredEnd = end > start && pattern.charAt(end - 1) == '|';
+            if (anchoredEnd) {
+                end--;
+            }
+            for (int i = start; i < end; i++) {
+                char c = pattern.charAt(i);
+                if (c == '*') {
+                    regex.append(".*");
+                } else if (c == '^') {
+                    regex.append("(?:[^a-z0-9_.%-]|$)");
+                } else if (c == '|') {
+                    regex.append("\\|");
+                } else if ("\\.[]{}()+?$".indexOf(c) >= 0) {
+                    regex.append('\\').append(c);
+                } else {
+                    regex.append(c);
+                }
+            }
+            if (anchoredEnd) {
+                regex.append('$');
+            }
+            return Pattern.compile(regex.toString());
+        }
+    }
+}
@@ -0,0 +1,454 @@
+package com.browser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+
+/**
+ * 书签和浏览历史的内存索引，按前缀匹配地址和标题中的词，结果按 frecency（访问次数和最近访问时间）排序。
+ * <p>
+ * 查询时选候选最少的词：候选不多时从词索引取出候选逐个计分；所有词的候选都很多时（例如只输入了一两个字母），
+ * 改为按 frecency 从高到低扫描条目，凑够结果就停止。
+ * <p>
+ * 全部条目的排序只在 {@link #refreshRank} 中计算，由调用方在空闲时安排，查询时不排序：
+ * 上次排序之后有变化的条目单独记录，查询时按当前分数和排好序的条目合并。
+ * <p>
+ * 不是线程安全的，由 {@link BrowserHistory} 限定在一个后台线程上使用。
+ */
+final class HistoryIndex {
+
+    // 中文等没有空格分词的文字，从每个字开始各索引一个词，长度有上限
+    private static final int MAX_CJK_TOKEN_LENGTH = 8;
+    // 候选数量超过这个值时改为按 frecency 顺序扫描
+    private static final int MAX_POSTING_CANDIDATES = 2000;
+    private static final long DAY_MS = 24L * 60 * 60 * 1000;
+    // 建索引时从地址中去掉的部分，查询时忽略
+    private static final Set<String> URL_PREFIX_TERMS = Set.of("http", "https", "www");
+
+    static final class Entry {
+        final int id;
+        final String url;
+        String title;
+        int visitCount;
+        long lastVisit;
+        boolean bookmarked;
+        // 已经从索引中删除，编号不再复用，词索引中的编号在查询时跳过
+        boolean removed;
+        // 地址和标题的小写形式，用于校验查询词
+        String searchText;
+
+        Entry(int id, String url) {
+            this.id = id;
+            this.url = url;
+            this.searchText = url.toLowerCase(Locale.ROOT);
+        }
+    }
+
+    /**
+     * 一个词对应的条目编号列表，按添加顺序排列，可能有重复，查询时去重。
+     */
+    private static final class Postings {
+        int[] ids = new int[2];
+        int size;
+
+        void add(int id) {
+            if (size > 0 && ids[size - 1] == id) {
+                return;
+            }
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+    }
+
+    private record Scored(Entry entry, double score) {
+    }
+
+    // 分数相同时编号大的靠前，和 refreshRank 的顺序一致
+    private static final Comparator<Scored> SCORE_ORDER =
+            Comparator.comparingDouble(Scored::score).thenComparingInt(scored -> scored.entry.id);
+
+    private final List<Entry> entries = new ArrayList<>();
+    private final Map<String, Integer> idByUrl = new HashMap<>();
+    private final TreeMap<String, Postings> tokens = new TreeMap<>();
+    // 查询时标记已经检查过的条目，避免重复计分
+    private int[] marks = new int[0];
+    private int generation;
+    // 上次排序时按 frecency 从高到低排列的条目编号
+    private int[] rankOrder = new int[0];
+    // 上次排序之后新增或变化的条目编号
+    private final BitSet changed = new BitSet();
+    private boolean rankDirty;
+    private int removedCount;
+
+    int size() {
+        return entries.size() - removedCount;
+    }
+
+    Entry get(String url) {
+        Integer id = idByUrl.get(url);
+        return id != null ? entries.get(id) : null;
+    }
+
+    /**
+     * 所有条目，包括已经删除的条目（{@link Entry#removed}）。
+     */
+    List<Entry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * 记录一次访问，标题为 null 时保留原标题。
+     */
+    void recordVisit(String url, String title, long time) {
+        Entry entry = getOrCreate(url);
+        entry.visitCount++;
+        entry.lastVisit = Math.max(entry.lastVisit, time);
+        if (title != null) {
+            setTitle(entry, title);
+        }
+        markChanged(entry);
+    }
+
+    void setTitle(String url, String title) {
+        Entry entry = get(url);
+        if (entry != null && title != null) {
+            setTitle(entry, title);
+        }
+    }
+
+    void setBookmarked(String url, boolean bookmarked) {
+        Entry entry = bookmarked ? getOrCreate(url) : get(url);
+        if (entry != null && entry.bookmarked != bookmarked) {
+            entry.bookmarked = bookmarked;
+            markChanged(entry);
+        }
+    }
+
+    /**
+     * 放入一条汇总过的访问记录，用于从磁盘恢复。访问次数累加到已有条目上，恢复过程中新的访问不会被覆盖。
+     */
+    void put(String url, String title, int visitCount, long lastVisit) {
+        Entry entry = getOrCreate(url);
+        entry.visitCount += visitCount;
+        entry.lastVisit = Math.max(entry.lastVisit, lastVisit);
+        if (title != null) {
+            setTitle(entry, title);
+        }
+        markChanged(entry);
+    }
+
+    /**
+     * 删除最后访问早于 cutoff 的访问记录，和压缩日志时丢弃的记录一致：书签条目保留，只清掉访问次数。返回删除的条目数。
+     */
+    int removeVisitsBefore(long cutoff) {
+        int removed = 0;
+        for (Entry entry : entries) {
+            if (entry.removed || entry.visitCount <= 0 || entry.lastVisit >= cutoff) {
+                continue;
+            }
+            if (entry.bookmarked) {
+                entry.visitCount = 0;
+                entry.lastVisit = 0;
+                markChanged(entry);
+            } else {
+                entry.removed = true;
+                idByUrl.remove(entry.url);
+                removed++;
+            }
+        }
+        removedCount += removed;
+        return removed;
+    }
+
+    boolean isRankDirty() {
+        return rankDirty;
+    }
+
+    /**
+     * 按当前时间重新计算所有条目的 frecency 并排序。条目有变化后由调用方在空闲时调用，查询不会调用。
+     */
+    void refreshRank(long now) {
+        int count = entries.size();
+        long[] keys = new long[count];
+        for (int id = 0; id < count; id++) {
+            // 正数 float 的位模式与大小顺序一致，拼上编号后直接按 long 排序
+            keys[id] = ((long) Float.floatToIntBits((float) score(entries.get(id), now)) << 32) | id;
+        }
+        Arrays.sort(keys);
+        int[] order = new int[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = (int) keys[count - 1 - i];
+        }
+        rankOrder = order;
+        changed.clear();
+        rankDirty = false;
+    }
+
+    /**
+     * frecency 最高、至少访问过一次的 limit 个条目。
+     */
+    List<Entry> top(int limit, long now) {
+        if (limit <= 0) {
+            return List.of();
+        }
+        return byRank(entry -> entry.visitCount > 0, limit, now);
+    }
+
+    /**
+     * 查询：每个词都要匹配地址或标题中某个词的前缀，返回 frecency 最高的 limit 个条目。
+     */
+    List<Entry> search(String query, int limit, long now) {
+        String lower = query.toLowerCase(Locale.ROOT);
+        if (limit <= 0 || tokenize(lower).isEmpty()) {
+            return List.of();
+        }
+        // 地址去掉协议和 www 之后才建索引，查询里的这些词不参与匹配，只输入了这些词时按 frecency 返回
+        List<String> terms = tokenize(stripUrl(lower));
+        terms.removeIf(URL_PREFIX_TERMS::contains);
+        // 取候选最少的词，所有词的候选都超过上限时按 frecency 顺序扫描
+        List<Postings> best = null;
+        for (String term : terms) {
+            List<Postings> candidates = candidates(term);
+            if (candidates != null && candidates.isEmpty()) {
+                // 没有以它开头的词。还没输完的 http、www 只能匹配地址中没有建索引的部分，不用来挑选候选，其余的词不会有结果
+                if (!isUrlPrefix(term)) {
+                    return List.of();
+                }
+                continue;
+            }
+            if (candidates != null && (best == null || count(candidates) < count(best))) {
+                best = candidates;
+            }
+        }
+        return best != null ? searchCandidates(best, terms, limit, now) : byRank(entry -> matchesAll(entry, terms), limit, now);
+    }
+
+    /**
+     * 以 term 为前缀的所有词的编号列表，总数超过上限时返回 null。
+     */
+    private List<Postings> candidates(String term) {
+        List<Postings> candidates = new ArrayList<>();
+        int count = 0;
+        for (Postings postings : tokens.subMap(term, true, term + Character.MAX_VALUE, false).values()) {
+            candidates.add(postings);
+            count += postings.size;
+            if (count > MAX_POSTING_CANDIDATES) {
+                return null;
+            }
+        }
+        return candidates;
+    }
+
+    private static boolean isUrlPrefix(String term) {
+        for (String prefix : URL_PREFIX_TERMS) {
+            if (prefix.startsWith(term)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int count(List<Postings> candidates) {
+        int count = 0;
+        for (Postings postings : candidates) {
+            count += postings.size;
+        }
+        return count;
+    }
+
+    private List<Entry> searchCandidates(List<Postings> candidates, List<String> terms, int limit, long now) {
+        int stamp = nextGeneration();
+        PriorityQueue<Scored> top = new PriorityQueue<>(limit + 1, SCORE_ORDER);
+        for (Postings postings : candidates) {
+            for (int i = 0; i < postings.size; i++) {
+                int id = postings.ids[i];
+                if (marks[id] == stamp) {
+                    continue;
+                }
+                marks[id] = stamp;
+                Entry entry = entries.get(id);
+                if (entry.removed || !matchesAll(entry, terms)) {
+                    continue;
+                }
+                offer(top, entry, score(entry, now), limit);
+            }
+        }
+        return drain(top);
+    }
+
+    /**
+     * 按 frecency 从高到低取前 limit 个符合条件的条目：沿上次排序的顺序扫描，凑够 limit 个就停止，
+     * 上次排序之后有变化的条目按当前分数一起比较。
+     */
+    private List<Entry> byRank(Predicate<Entry> filter, int limit, long now) {
+        int stamp = nextGeneration();
+        PriorityQueue<Scored> top = new PriorityQueue<>(limit + 1, SCORE_ORDER);
+        for (int id = changed.nextSetBit(0); id >= 0; id = changed.nextSetBit(id + 1)) {
+            marks[id] = stamp;
+            Entry entry = entries.get(id);
+            if (!entry.removed && filter.test(entry)) {
+                offer(top, entry, score(entry, now), limit);
+            }
+        }
+        int found = 0;
+        for (int i = 0; i < rankOrder.length && found < limit; i++) {
+            int id = rankOrder[i];
+            Entry entry = entries.get(id);
+            if (marks[id] != stamp && !entry.removed && filter.test(entry)) {
+                found++;
+                offer(top, entry, score(entry, now), limit);
+            }
+        }
+        return drain(top);
+    }
+
+    private int nextGeneration() {
+        if (marks.length < entries.size()) {
+            marks = Arrays.copyOf(marks, Math.max(16, entries.size() * 2));
+        }
+        return ++generation;
+    }
+
+    private static void offer(PriorityQueue<Scored> top, Entry entry, double score, int limit) {
+        Scored scored = new Scored(entry, score);
+        if (top.size() < limit) {
+            top.add(scored);
+        } else if (SCORE_ORDER.compare(scored, top.peek()) > 0) {
+            top.poll();
+            top.add(scored);
+        }
+    }
+
+    private static List<Entry> drain(PriorityQueue<Scored> top) {
+        Entry[] result = new Entry[top.size()];
+        for (int i = result.length - 1; i >= 0; i--) {
+            result[i] = top.poll().entry;
+        }
+        return Arrays.asList(result);
+    }
+
+    /**
+     * 每个查询词都是地址或标题中某个词的前缀，中文可以从任意一个字开始匹配。
+     */
+    private static boolean matchesAll(Entry entry, List<String> terms) {
+        String text = entry.searchText;
+        for (String term : terms) {
+            if (!matchesWordPrefix(text, term)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean matchesWordPrefix(String text, String term) {
+        for (int index = text.indexOf(term); index >= 0; index = text.indexOf(term, index + 1)) {
+            if (index == 0 || !Character.isLetterOrDigit(text.charAt(index - 1))
+                    || Character.UnicodeScript.of(text.codePointAt(index)) == Character.UnicodeScript.HAN) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * frecency：访问次数乘以按最近访问时间分段的权重，书签额外加分。
+     */
+    static double score(Entry entry, long now) {
+        long age = now - entry.lastVisit;
+        double recency;
+        if (entry.lastVisit == 0) {
+            recency = 10;
+        } else if (age < 4 * DAY_MS) {
+            recency = 100;
+        } else if (age < 14 * DAY_MS) {
+            recency = 70;
+        } else if (age < 31 * DAY_MS) {
+            recency = 50;
+        } else if (age < 90 * DAY_MS) {
+            recency = 30;
+        } else {
+            recency = 10;
+        }
+        double score = (entry.visitCount + (entry.bookmarked ? 2 : 0)) * recency;
+        return entry.bookmarked ? score + 100 : score;
+    }
+
+    private Entry getOrCreate(String url) {
+        Integer id = idByUrl.get(url);
+        if (id != null) {
+            return entries.get(id);
+        }
+        Entry entry = new Entry(entries.size(), url);
+        entries.add(entry);
+        idByUrl.put(url, entry.id);
+        index(entry.id, stripUrl(entry.searchText));
+        markChanged(entry);
+        return entry;
+    }
+
+    private void setTitle(Entry entry, String title) {
+        if (title.equals(entry.title)) {
+            return;
+        }
+        entry.title = title;
+        String lower = title.toLowerCase(Locale.ROOT);
+        entry.searchText = entry.url.toLowerCase(Locale.ROOT) + '\n' + lower;
+        // 旧标题的词不删除，查询时按 searchText 校验
+        index(entry.id, lower);
+    }
+
+    private void markChanged(Entry entry) {
+        changed.set(entry.id);
+        rankDirty = true;
+    }
+
+    private void index(int id, String text) {
+        for (String token : tokenize(text)) {
+            tokens.computeIfAbsent(token, key -> new Postings()).add(id);
+        }
+    }
+
+    /**
+     * 按非字母数字字符切词，中文等文字从每个字开始各取一个词。
+     */
+    static List<String> tokenize(String text) {
+        List<String> result = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                addToken(result, text.substring(start, i));
+                start = -1;
+            }
+        }
+        return result;
+    }
+
+    private static void addToken(List<String> result, String word) {
+        result.add(word);
+        for (int i = 1; i < word.length(); i++) {
+            if (Character.UnicodeScript.of(word.codePointAt(i)) == Character.UnicodeScript.HAN) {
+                result.add(word.substring(i, Math.min(word.length(), i + MAX_CJK_TOKEN_LENGTH)));
+            }
+        }
+    }
+
+    static String stripUrl(String url) {
+        int scheme = url.indexOf("://");
+        String result = scheme >= 0 ? url.substring(scheme + 3) : url;
+        return result.startsWith("www.") ? result.substring(4) : result;
+    }
+}
@@ -0,0 +1,442 @@
+package com.browser;
+
+import com.intellij.openapi.diagnostic.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * 浏览历史的追加式二进制日志。每次访问追加一条很小的记录，不改写已有数据；
+ * 重复访问和过期记录由后台压缩合并：按内存中的索引重写一份只含汇总记录的新文件，再改名替换。
+ * 压缩分三步，只有写新文件这一步在 IO 线程上：在索引线程上取条目快照，在 IO 线程上写临时文件，
+ * 再回到索引线程替换日志，并补上取快照之后追加的记录。
+ * <p>
+ * 文件格式：4 字节文件头，之后是若干条记录，每条为 [长度 int][类型 byte][内容][CRC32 int]，长度包含类型和内容。
+ * 启动时流式读取，遇到写了一半或校验失败的记录就停止，并截掉后面的部分。
+ * <p>
+ * 不是线程安全的，由 {@link BrowserHistory} 限定在索引线程上使用，{@link Compaction#write()} 除外。
+ */
+final class HistoryJournal implements Closeable {
+
+    private static final Logger LOG = Logger.getInstance(HistoryJournal.class);
+    private static final int MAGIC = 0x49424A31;
+    private static final byte VISIT = 1;
+    private static final byte TITLE = 2;
+    private static final byte ENTRY = 3;
+    // 单条记录的长度上限，超过视为文件损坏
+    private static final int MAX_RECORD_LENGTH = 1 << 20;
+    // 日志记录数超过条目数的这个倍数（并且超过最小记录数）时压缩
+    private static final int COMPACT_RATIO = 2;
+    private static final int COMPACT_MIN_RECORDS = 10_000;
+    // 日志打不开时暂存在内存中的记录数上限，超过后丢弃新的记录
+    private static final int MAX_PENDING_RECORDS = 10_000;
+
+    private final Path file;
+    private DataInputStream reader;
+    private long validLength;
+    private FileChannel channel;
+    // 日志已经读完，之后文件被关闭（例如压缩替换文件时出错）的话，下次追加时重新打开
+    private boolean loaded;
+    // 日志打开之前追加的记录，打开后再写入文件
+    private final List<ByteBuffer> pending = new ArrayList<>();
+    private boolean dropping;
+    private Compaction compaction;
+    private int recordCount;
+    private final CRC32 crc = new CRC32();
+    private byte[] buffer = new byte[1024];
+
+    HistoryJournal(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * 读取一批记录应用到索引，早于 cutoff 的访问跳过。返回 true 表示还有没读完的记录。
+     */
+    boolean load(HistoryIndex index, int maxRecords, long cutoff) throws IOException {
+        if (loaded) {
+            return false;
+        }
+        try {
+            if (reader == null) {
+                if (!Files.exists(file)) {
+                    finishLoading();
+                    return false;
+                }
+                reader = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16));
+                if (!readHeader(reader)) {
+                    LOG.warn("Unrecognized history journal, starting a new one");
+                    recover();
+                    return false;
+                }
+                validLength = Integer.BYTES;
+            }
+            for (int i = 0; i < maxRecords; i++) {
+                if (!readRecord(index, cutoff)) {
+                    finishLoading();
+                    return false;
+                }
+            }
+            return true;
+        } catch (IOException | RuntimeException e) {
+            LOG.warn("Failed to read history journal, keeping the first " + validLength + " bytes", e);
+            recover();
+            return false;
+        }
+    }
+
+    void appendVisit(String url, long time) {
+        append(VISIT, out -> {
+            out.writeLong(time);
+            writeString(out, url);
+        });
+    }
+
+    void appendTitle(String url, String title) {
+        append(TITLE, out -> {
+            writeString(out, url);
+            writeString(out, title);
+        });
+    }
+
+    /**
+     * 日志中的记录是否已经明显多于索引中的条目。
+     */
+    boolean needsCompaction(int entryCount) {
+        return channel != null && compaction == null && recordCount > COMPACT_MIN_RECORDS && recordCount > entryCount * COMPACT_RATIO;
+    }
+
+    /**
+     * 开始压缩：取出最后访问不早于 cutoff 的条目快照，早于 cutoff 的访问记录同时从索引中删除。
+     * 返回的压缩任务在 IO 线程上调用 {@link Compaction#write()}，再回到索引线程调用 {@link #finishCompaction}。
+     */
+    Compaction startCompaction(HistoryIndex index, long cutoff) {
+        index.removeVisitsBefore(cutoff);
+        List<Summary> entries = new ArrayList<>(index.size());
+        for (HistoryIndex.Entry entry : index.getEntries()) {
+            if (!entry.removed && entry.visitCount > 0) {
+                entries.add(new Summary(entry.url, entry.title, entry.visitCount, entry.lastVisit));
+            }
+        }
+        compaction = new Compaction(file.resolveSibling(file.getFileName() + ".tmp"), entries);
+        return compaction;
+    }
+
+    /**
+     * 用写好的临时文件替换日志，补上取快照之后追加的记录。临时文件没写成功时保留原日志。
+     */
+    void finishCompaction(Compaction finished) throws IOException {
+        if (finished != compaction) {
+            Files.deleteIfExists(finished.temp);
+            return;
+        }
+        compaction = null;
+        if (!finished.written || finished.overflowed || channel == null) {
+            Files.deleteIfExists(finished.temp);
+            return;
+        }
+        int before = recordCount;
+        channel.close();
+        channel = null;
+        try {
+            try {
+                Files.move(finished.temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(finished.temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+            validLength = finished.length;
+            recordCount = finished.entries.size() + finished.appended.size();
+            pending.addAll(0, finished.appended);
+        } finally {
+            // 替换失败时重新打开原日志继续追加
+            openForAppend();
+        }
+        LOG.info("Compacted history journal from " + before + " to " + recordCount + " records in "
+                + (System.currentTimeMillis() - finished.startTime) + " ms");
+    }
+
+    private record Summary(String url, String title, int visitCount, long lastVisit) {
+    }
+
+    /**
+     * 一次后台压缩，由 {@link #startCompaction} 创建。
+     */
+    static final class Compaction {
+        private final Path temp;
+        private final List<Summary> entries;
+        private final long startTime = System.currentTimeMillis();
+        // 取快照之后追加的记录，替换文件后补写到新日志，只在索引线程上访问
+        private final List<ByteBuffer> appended = new ArrayList<>();
+        private boolean overflowed;
+        private volatile boolean written;
+        private volatile long length;
+
+        private Compaction(Path temp, List<Summary> entries) {
+            this.temp = temp;
+            this.entries = entries;
+        }
+
+        /**
+         * 把快照写成临时文件，每个地址一条汇总记录。在 IO 线程上调用。
+         */
+        void write() throws IOException {
+            CRC32 crc = new CRC32();
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+                out.writeInt(MAGIC);
+                for (Summary entry : entries) {
+                    out.write(encode(ENTRY, record -> {
+                        writeString(record, entry.url());
+                        writeString(record, entry.title());
+                        record.writeInt(entry.visitCount());
+                        record.writeLong(entry.lastVisit());
+                    }, crc).array());
+                }
+            }
+            length = Files.size(temp);
+            written = true;
+        }
+
+        private void recordAppended(ByteBuffer record) {
+            if (overflowed) {
+                return;
+            }
+            if (appended.size() >= MAX_PENDING_RECORDS) {
+                // 压缩期间追加的记录太多，放弃这次压缩，原日志里什么也不缺
+                overflowed = true;
+                appended.clear();
+                return;
+            }
+            appended.add(record);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        loaded = false;
+        compaction = null;
+        if (reader != null) {
+            reader.close();
+            reader = null;
+        }
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    private interface RecordWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private void append(byte type, RecordWriter writer) {
+        ByteBuffer record;
+        try {
+            record = encode(type, writer, crc);
+        } catch (IOException e) {
+            LOG.warn("Failed to encode history record", e);
+            return;
+        }
+        if (channel == null && loaded) {
+            try {
+                openForAppend();
+            } catch (IOException e) {
+                LOG.warn("Failed to reopen history journal", e);
+            }
+        }
+        if (channel == null) {
+            if (pending.size() >= MAX_PENDING_RECORDS) {
+                if (!dropping) {
+                    dropping = true;
+                    LOG.warn("History journal is not writable, dropping new records");
+                }
+                return;
+            }
+            pending.add(record);
+            recordCount++;
+            return;
+        }
+        if (compaction != null) {
+            compaction.recordAppended(record.duplicate());
+        }
+        int size = record.remaining();
+        try {
+            while (record.hasRemaining()) {
+                channel.write(record);
+            }
+            validLength += size;
+            recordCount++;
+        } catch (IOException e) {
+            LOG.warn("Failed to append history record", e);
+        }
+    }
+
+    private static ByteBuffer encode(byte type, RecordWriter writer, CRC32 crc) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0);
+        out.writeByte(type);
+        writer.write(out);
+        byte[] data = bytes.toByteArray();
+        int length = data.length - Integer.BYTES;
+        crc.reset();
+        crc.update(data, Integer.BYTES, length);
+        ByteBuffer record = ByteBuffer.allocate(data.length + Integer.BYTES);
+        record.putInt(length).put(data, Integer.BYTES, length).putInt((int) crc.getValue());
+        record.flip();
+        return record;
+    }
+
+    // 读完日志，从最后一条完整的记录之后开始追加
+    private void finishLoading() throws IOException {
+        closeReader();
+        loaded = true;
+        openForAppend();
+    }
+
+    // 日志读不下去时把原文件留作 .bad：读到过完整的记录时复制一份，截掉后面的部分继续使用，否则换一个新日志
+    private void recover() throws IOException {
+        closeReader();
+        Path bad = file.resolveSibling(file.getFileName() + ".bad");
+        if (validLength > 0) {
+            Files.copy(file, bad, StandardCopyOption.REPLACE_EXISTING);
+        } else {
+            Files.move(file, bad, StandardCopyOption.REPLACE_EXISTING);
+        }
+        loaded = true;
+        openForAppend();
+    }
+
+    private void closeReader() throws IOException {
+        if (reader != null) {
+            reader.close();
+            reader = null;
+        }
+    }
+
+    private void openForAppend() throws IOException {
+        Files.createDirectories(file.getParent());
+        boolean created = !Files.exists(file);
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        if (created) {
+            channel.write(ByteBuffer.allocate(Integer.BYTES).putInt(MAGIC).flip());
+            validLength = Integer.BYTES;
+        } else if (channel.size() > validLength) {
+            // 截掉写了一半的记录
+            LOG.warn("Truncating damaged history journal at " + validLength + " of " + channel.size() + " bytes");
+            channel.truncate(validLength);
+        }
+        channel.position(channel.size());
+        for (ByteBuffer record : pending) {
+            validLength += record.remaining();
+            while (record.hasRemaining()) {
+                channel.write(record);
+            }
+        }
+        pending.clear();
+        dropping = false;
+    }
+
+    private static boolean readHeader(DataInputStream in) throws IOException {
+        try {
+            return in.readInt() == MAGIC;
+        } catch (EOFException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 读一条记录并应用到索引，读到文件末尾或损坏的记录时返回 false。
+     */
+    private boolean readRecord(HistoryIndex index, long cutoff) throws IOException {
+        int length;
+        try {
+            length = reader.readInt();
+        } catch (EOFException e) {
+            return false;
+        }
+        if (length <= 0 || length > MAX_RECORD_LENGTH) {
+            return false;
+        }
+        if (buffer.length < length) {
+            buffer = new byte[Math.max(length, buffer.length * 2)];
+        }
+        int checksum;
+        try {
+            reader.readFully(buffer, 0, length);
+            checksum = reader.readInt();
+        } catch (EOFException e) {
+            return false;
+        }
+        crc.reset();
+        crc.update(buffer, 0, length);
+        if ((int) crc.getValue() != checksum) {
+            return false;
+        }
+        validLength += Integer.BYTES * 2L + length;
+        recordCount++;
+        apply(index, new DataInputStream(new ByteArrayInputStream(buffer, 0, length)), cutoff);
+        return true;
+    }
+
+    private static void apply(HistoryIndex index, DataInputStream in, long cutoff) throws IOException {
+        switch (in.readByte()) {
+            case VISIT -> {
+                long time = in.readLong();
+                String url = readString(in);
+                if (time >= cutoff) {
+                    index.recordVisit(url, null, time);
+                }
+            }
+            case TITLE -> index.setTitle(readString(in), readString(in));
+            case ENTRY -> {
+                String url = readString(in);
+                String title = readString(in);
+                int visitCount = in.readInt();
+                long lastVisit = in.readLong();
+                if (lastVisit >= cutoff) {
+                    index.put(url, title, visitCount, lastVisit);
+                }
+            }
+            default -> {
+                // 新版本的记录类型，跳过
+            }
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,675 @@
+package com.browser;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * 插件自己管理的 HTTP 磁盘缓存。只依赖 JDK 和 Gson，网络请求通过 {@link Network} 交给调用方，
+ * 插件里走 CEF，也可以对着本地的 HTTP 服务器单独运行。
+ * <p>
+ * 每个地址一个响应体文件和一个 JSON 元数据文件。新鲜的条目直接从磁盘返回，过期的条目带上
+ * ETag / Last-Modified 重新验证，服务器返回 304 时仍使用磁盘上的响应体。总大小超过上限时
+ * 按最近最少使用的顺序删除，使用顺序通过响应体文件的修改时间持久化。
+ * <p>
+ * 固定页面（以及加载它时请求的资源）不会被淘汰，过期后也先从磁盘返回，再在后台重新验证；
+ * 网络不通时任何已缓存的条目都会作为离线副本返回。
+ * <p>
+ * 文件读写都在构造时传入的 io 执行器上进行，这个执行器必须是单线程的。
+ */
+final class HttpDiskCache {
+
+    private static final String ENTRIES_DIR = "entries";
+    private static final String PINNED_FILE = "pinned.json";
+    // 单个响应体占总大小上限的最大比例
+    private static final int MAX_ENTRY_FRACTION = 8;
+    // 只有 Last-Modified 时，新鲜期按距上次修改时间的比例估算，并且不超过一天
+    private static final double HEURISTIC_FRACTION = 0.1;
+    private static final long MAX_HEURISTIC_MS = 24L * 60 * 60 * 1000;
+    // 不写入缓存、也不随读到内存的响应体交给 CEF 的响应头：逐跳头、Cookie（网络请求已经保存过），
+    // 以及响应体解码后不再成立的编码和长度
+    private static final Set<String> DROPPED_HEADERS = Set.of("connection", "keep-alive", "transfer-encoding",
+            "content-encoding", "content-length", "set-cookie", "set-cookie2", "proxy-authenticate", "upgrade");
+    // 页面自己带的条件请求头，由缓存改成自己的验证头
+    private static final Set<String> CONDITIONAL_HEADERS = Set.of("if-none-match", "if-modified-since",
+            "if-match", "if-unmodified-since", "if-range");
+
+    enum Source {
+        // 网络返回完整响应
+        NETWORK,
+        // 新鲜的缓存或固定页面，直接从磁盘返回
+        DISK,
+        // 服务器返回 304，使用磁盘上的响应体
+        REVALIDATED,
+        // 网络请求失败，返回磁盘上的旧副本
+        OFFLINE
+    }
+
+    /**
+     * 发出 GET 请求，完成或失败时调用 callback 一次，可以在任意线程上回调。
+     */
+    interface Network {
+        void fetch(String url, Map<String, String> headers, NetworkCallback callback);
+    }
+
+    interface NetworkCallback {
+        void completed(int status, String statusText, Map<String, String> headers, byte[] body);
+
+        void failed(String error);
+    }
+
+    record Response(int status, String statusText, Map<String, String> headers, byte[] body, Source source) {
+    }
+
+    /**
+     * 缓存条目的元数据，创建后不再修改，更新时生成新对象。
+     */
+    private static final class Entry {
+        String url;
+        int status;
+        String statusText;
+        Map<String, String> headers;
+        long storedAt;
+        long freshUntil;
+        long size;
+        // 固定这个条目的页面地址，null 表示可以淘汰
+        String pinnedBy;
+        transient String key;
+        transient long lastAccess;
+    }
+
+    private final Path directory;
+    private final Executor io;
+    private final BiConsumer<String, Throwable> errorHandler;
+    private final Gson gson = new Gson();
+    // 按访问顺序排列，最早的条目最先被淘汰，由自身的锁保护
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Set<String> pinnedPages = ConcurrentHashMap.newKeySet();
+    // 正在后台重新验证的地址，避免同一地址重复请求
+    private final Set<String> revalidating = ConcurrentHashMap.newKeySet();
+    private long totalBytes;
+    private volatile long maxBytes;
+    private volatile boolean loaded;
+
+    HttpDiskCache(Path directory, long maxBytes, Executor io, BiConsumer<String, Throwable> errorHandler) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.io = io;
+        this.errorHandler = errorHandler;
+        io.execute(this::load);
+    }
+
+    boolean isLoaded() {
+        return loaded;
+    }
+
+    void setMaxBytes(long maxBytes) {
+        if (this.maxBytes == maxBytes) {
+            return;
+        }
+        this.maxBytes = maxBytes;
+        synchronized (entries) {
+            evict(null);
+        }
+    }
+
+    long getTotalBytes() {
+        synchronized (entries) {
+            return totalBytes;
+        }
+    }
+
+    boolean isPinned(String pageUrl) {
+        return pageUrl != null && pinnedPages.contains(stripFragment(pageUrl));
+    }
+
+    /**
+     * 固定页面：下次加载时它和它请求的资源都会写入缓存，之后不会被淘汰，离线时也能打开。
+     */
+    void pin(String pageUrl) {
+        if (pinnedPages.add(stripFragment(pageUrl))) {
+            io.execute(this::savePinned);
+        }
+    }
+
+    /**
+     * 取消固定，这个页面固定的条目重新参与淘汰。
+     */
+    void unpin(String pageUrl) {
+        String page = stripFragment(pageUrl);
+        if (!pinnedPages.remove(page)) {
+            return;
+        }
+        List<Entry> released = new ArrayList<>();
+        synchronized (entries) {
+            for (Map.Entry<String, Entry> mapEntry : entries.entrySet()) {
+                Entry entry = mapEntry.getValue();
+                if (page.equals(entry.pinnedBy)) {
+                    Entry copy = copy(entry);
+                    copy.pinnedBy = null;
+                    mapEntry.setValue(copy);
+                    released.add(copy);
+                }
+            }
+            evict(null);
+        }
+        io.execute(() -> {
+            savePinned();
+            released.forEach(this::writeMeta);
+        });
+    }
+
+    /**
+     * 加载一个 GET 请求，结果交给 callback，网络和缓存都没有结果时传入 null。
+     *
+     * @param pageUrl 发起请求的页面地址，页面被固定时请求到的资源也被固定，可以为 null
+     */
+    void load(String url, Map<String, String> requestHeaders, String pageUrl, Network network,
+              Consumer<Response> callback) {
+        long now = System.currentTimeMillis();
+        String pinnedBy = isPinned(pageUrl) ? stripFragment(pageUrl) : null;
+        Entry entry = lookup(url);
+        if (entry != null && pinnedBy != null && entry.pinnedBy == null) {
+            entry = markPinned(entry, pinnedBy);
+        }
+        if (entry != null && (entry.freshUntil > now || pinnedBy != null || entry.pinnedBy != null)) {
+            if (entry.freshUntil <= now) {
+                revalidate(entry, requestHeaders, pinnedBy, network);
+            }
+            readBody(entry, Source.DISK, callback);
+            return;
+        }
+        Entry cached = entry;
+        network.fetch(url, requestHeaders(requestHeaders, cached), new NetworkCallback() {
+            @Override
+            public void completed(int status, String statusText, Map<String, String> headers, byte[] body) {
+                if (status == 304 && cached != null) {
+                    readBody(refresh(cached, headers), Source.REVALIDATED, callback);
+                    return;
+                }
+                store(url, status, statusText, headers, body, pinnedBy);
+                callback.accept(new Response(status, statusText, bufferedHeaders(headers), body, Source.NETWORK));
+            }
+
+            @Override
+            public void failed(String error) {
+                if (cached != null) {
+                    readBody(cached, Source.OFFLINE, callback);
+                } else {
+                    callback.accept(null);
+                }
+            }
+        });
+    }
+
+    // 固定的条目先从磁盘返回，再在后台重新验证，结果只更新缓存
+    private void revalidate(Entry entry, Map<String, String> requestHeaders, String pinnedBy, Network network) {
+        if (!revalidating.add(entry.url)) {
+            return;
+        }
+        network.fetch(entry.url, requestHeaders(requestHeaders, entry), new NetworkCallback() {
+            @Override
+            public void completed(int status, String statusText, Map<String, String> headers, byte[] body) {
+                revalidating.remove(entry.url);
+                if (status == 304) {
+                    refresh(entry, headers);
+                } else {
+                    store(entry.url, status, statusText, headers, body, pinnedBy);
+                }
+            }
+
+            @Override
+            public void failed(String error) {
+                revalidating.remove(entry.url);
+            }
+        });
+    }
+
+    private Entry lookup(String url) {
+        if (!loaded) {
+            return null;
+        }
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(url);
+        }
+        if (entry != null) {
+            // 记录访问时间，重启后仍能保持淘汰顺序
+            io.execute(() -> touch(entry));
+        }
+        return entry;
+    }
+
+    private static Map<String, String> requestHeaders(Map<String, String> requestHeaders, Entry entry) {
+        Map<String, String> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        requestHeaders.forEach((name, value) -> {
+            if (!CONDITIONAL_HEADERS.contains(name.toLowerCase(Locale.ROOT))) {
+                headers.put(name, value);
+            }
+        });
+        if (entry != null) {
+            String etag = entry.headers.get("ETag");
+            if (etag != null) {
+                headers.put("If-None-Match", etag);
+            }
+            String lastModified = entry.headers.get("Last-Modified");
+            if (lastModified != null) {
+                headers.put("If-Modified-Since", lastModified);
+            }
+        }
+        return headers;
+    }
+
+    private void store(String url, int status, String statusText, Map<String, String> headers, byte[] body,
+                       String pinnedBy) {
+        if (!loaded || !isCacheable(status, headers, body)) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        Entry entry = new Entry();
+        entry.url = url;
+        entry.key = keyOf(url);
+        entry.status = status;
+        entry.statusText = statusText;
+        entry.headers = bufferedHeaders(headers);
+        entry.storedAt = now;
+        entry.freshUntil = now + freshnessLifetime(entry.headers, now);
+        entry.size = body.length;
+        entry.pinnedBy = pinnedBy;
+        synchronized (entries) {
+            Entry previous = entries.get(url);
+            if (entry.pinnedBy == null && previous != null) {
+                // 其他页面也用到固定页面的资源时，保持固定
+                entry.pinnedBy = previous.pinnedBy;
+            }
+            put(entry);
+        }
+        io.execute(() -> write(entry, body));
+    }
+
+    // 固定页面用到了之前已经缓存的资源，把资源也固定下来
+    private Entry markPinned(Entry entry, String pinnedBy) {
+        Entry pinned = copy(entry);
+        pinned.pinnedBy = pinnedBy;
+        synchronized (entries) {
+            if (entries.get(entry.url) != entry) {
+                return entry;
+            }
+            entries.put(entry.url, pinned);
+        }
+        io.execute(() -> writeMeta(pinned));
+        return pinned;
+    }
+
+    // 304 响应带回的头合并进条目，重新计算新鲜期
+    private Entry refresh(Entry entry, Map<String, String> headers) {
+        long now = System.currentTimeMillis();
+        Entry refreshed = copy(entry);
+        refreshed.headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        refreshed.headers.putAll(entry.headers);
+        refreshed.headers.putAll(bufferedHeaders(headers));
+        refreshed.freshUntil = now + freshnessLifetime(refreshed.headers, now);
+        synchronized (entries) {
+            // 已经被淘汰或替换时不再放回
+            if (entries.get(entry.url) != entry) {
+                return entry;
+            }
+            entries.put(entry.url, refreshed);
+        }
+        io.execute(() -> writeMeta(refreshed));
+        return refreshed;
+    }
+
+    private void readBody(Entry entry, Source source, Consumer<Response> callback) {
+        io.execute(() -> {
+            byte[] body;
+            try {
+                body = Files.readAllBytes(bodyFile(entry.key));
+            } catch (IOException e) {
+                errorHandler.accept("Failed to read cached response for " + entry.url, e);
+                synchronized (entries) {
+                    if (entries.get(entry.url) == entry) {
+                        entries.remove(entry.url);
+                        totalBytes -= entry.size;
+                    }
+                }
+                callback.accept(null);
+                return;
+            }
+            callback.accept(new Response(entry.status, entry.statusText, entry.headers, body, source));
+        });
+    }
+
+    private boolean isCacheable(int status, Map<String, String> headers, byte[] body) {
+        if (status != 200 || body == null || body.length > maxBytes / MAX_ENTRY_FRACTION) {
+            return false;
+        }
+        Map<String, String> map = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        map.putAll(headers);
+        String cacheControl = map.getOrDefault("Cache-Control", "").toLowerCase(Locale.ROOT);
+        if (cacheControl.contains("no-store")) {
+            return false;
+        }
+        // 按请求头区分的响应这里无法区分，只接受按压缩方式区分的
+        String vary = map.get("Vary");
+        if (vary != null) {
+            for (String name : vary.split(",")) {
+                if (!name.trim().isEmpty() && !name.trim().equalsIgnoreCase("Accept-Encoding")) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 按 Cache-Control、Expires 和 Last-Modified 计算响应的新鲜期（毫秒）。
+     */
+    static long freshnessLifetime(Map<String, String> headers, long now) {
+        String cacheControl = headers.getOrDefault("Cache-Control", "").toLowerCase(Locale.ROOT);
+        for (String directive : cacheControl.split(",")) {
+            directive = directive.trim();
+            if (directive.equals("no-cache")) {
+                return 0;
+            }
+            if (directive.startsWith("max-age=")) {
+                try {
+                    return Math.max(0, Long.parseLong(directive.substring("max-age=".length()).trim()) * 1000);
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        long date = parseDate(headers.get("Date"), now);
+        String expires = headers.get("Expires");
+        if (expires != null) {
+            return Math.max(0, parseDate(expires, 0) - date);
+        }
+        long lastModified = parseDate(headers.get("Last-Modified"), -1);
+        if (lastModified >= 0 && lastModified < date) {
+            return Math.min(MAX_HEURISTIC_MS, (long) ((date - lastModified) * HEURISTIC_FRACTION));
+        }
+        return 0;
+    }
+
+    private static long parseDate(String value, long defaultValue) {
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * 去掉不适用于完整读出并解码的响应体的响应头，写入缓存的条目和直接交给 CEF 的响应都经过这里。
+     */
+    static Map<String, String> bufferedHeaders(Map<String, String> headers) {
+        Map<String, String> stored = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        headers.forEach((name, value) -> {
+            if (name != null && value != null && !DROPPED_HEADERS.contains(name.toLowerCase(Locale.ROOT))) {
+                stored.put(name, value);
+            }
+        });
+        return stored;
+    }
+
+    // 调用方持有 entries 的锁
+    private void put(Entry entry) {
+        Entry previous = entries.put(entry.url, entry);
+        totalBytes += entry.size - (previous != null ? previous.size : 0);
+        evict(entry);
+    }
+
+    // 调用方持有 entries 的锁，keep 为刚放入的条目，不会被删除
+    private void evict(Entry keep) {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (totalBytes > maxBytes && iterator.hasNext()) {
+            Entry eldest = iterator.next();
+            if (eldest == keep || eldest.pinnedBy != null) {
+                continue;
+            }
+            iterator.remove();
+            totalBytes -= eldest.size;
+            io.execute(() -> delete(eldest.key));
+        }
+    }
+
+    private void load() {
+        try {
+            loadPinned();
+            Path dir = directory.resolve(ENTRIES_DIR);
+            List<Path> metaFiles = new ArrayList<>();
+            if (Files.isDirectory(dir)) {
+                try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+                    for (Path file : stream) {
+                        String name = file.getFileName().toString();
+                        if (name.endsWith(".json")) {
+                            metaFiles.add(file);
+                        } else if (name.endsWith(".tmp")) {
+                            // 上次写到一半的文件
+                            Files.deleteIfExists(file);
+                        }
+                    }
+                }
+            }
+            List<Entry> loadedEntries = new ArrayList<>();
+            for (Path metaFile : metaFiles) {
+                Entry entry = readMeta(metaFile);
+                if (entry != null) {
+                    loadedEntries.add(entry);
+                }
+            }
+            // 按响应体的修改时间从旧到新放进访问顺序表
+            loadedEntries.sort(Comparator.comparingLong(entry -> entry.lastAccess));
+            synchronized (entries) {
+                for (Entry entry : loadedEntries) {
+                    put(entry);
+                }
+            }
+        } catch (IOException e) {
+            errorHandler.accept("Failed to load HTTP cache", e);
+        }
+        loaded = true;
+    }
+
+    private Entry readMeta(Path metaFile) throws IOException {
+        Entry entry = null;
+        try (Reader reader = Files.newBufferedReader(metaFile, StandardCharsets.UTF_8)) {
+            entry = gson.fromJson(reader, Entry.class);
+        } catch (JsonParseException e) {
+            errorHandler.accept("Failed to read HTTP cache entry " + metaFile, e);
+        }
+        String fileName = metaFile.getFileName().toString();
+        String key = fileName.substring(0, fileName.length() - ".json".length());
+        Path bodyFile = bodyFile(key);
+        // 元数据在响应体之后写入，缺少响应体或者内容不完整的条目直接删除
+        if (entry == null || entry.url == null || entry.headers == null || !key.equals(keyOf(entry.url))
+                || !Files.exists(bodyFile)) {
+            Files.deleteIfExists(metaFile);
+            Files.deleteIfExists(bodyFile);
+            return null;
+        }
+        Map<String, String> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        headers.putAll(entry.headers);
+        entry.headers = headers;
+        entry.key = key;
+        entry.size = Files.size(bodyFile);
+        entry.lastAccess = lastModified(bodyFile);
+        if (entry.pinnedBy != null && !pinnedPages.contains(entry.pinnedBy)) {
+            entry.pinnedBy = null;
+        }
+        return entry;
+    }
+
+    private void loadPinned() throws IOException {
+        Path file = directory.resolve(PINNED_FILE);
+        if (!Files.exists(file)) {
+            return;
+        }
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            List<String> pages = gson.fromJson(reader, new TypeToken<List<String>>() {
+            }.getType());
+            if (pages != null) {
+                pinnedPages.addAll(pages);
+            }
+        } catch (JsonParseException e) {
+            errorHandler.accept("Failed to read pinned pages", e);
+        }
+    }
+
+    private void savePinned() {
+        try {
+            Path file = directory.resolve(PINNED_FILE);
+            Files.createDirectories(directory);
+            Path temp = directory.resolve(PINNED_FILE + ".tmp");
+            try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                gson.toJson(new ArrayList<>(new LinkedHashSet<>(pinnedPages)), writer);
+            }
+            move(temp, file);
+        } catch (IOException e) {
+            errorHandler.accept("Failed to save pinned pages", e);
+        }
+    }
+
+    // 先写响应体再写元数据，中途退出时只会留下没有元数据的响应体，启动时清理
+    private void write(Entry entry, byte[] body) {
+        synchronized (entries) {
+            // 写入之前已经被淘汰或替换
+            if (entries.get(entry.url) != entry) {
+                return;
+            }
+        }
+        try {
+            Files.createDirectories(bodyFile(entry.key).getParent());
+            Path temp = entryFile(entry.key + ".body.tmp");
+            Files.write(temp, body);
+            move(temp, bodyFile(entry.key));
+        } catch (IOException e) {
+            errorHandler.accept("Failed to cache response for " + entry.url, e);
+            return;
+        }
+        writeMeta(entry);
+    }
+
+    private void writeMeta(Entry entry) {
+        Path temp = entryFile(entry.key + ".json.tmp");
+        try {
+            try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                gson.toJson(entry, writer);
+            }
+            move(temp, metaFile(entry.key));
+        } catch (IOException e) {
+            errorHandler.accept("Failed to save HTTP cache entry for " + entry.url, e);
+        }
+    }
+
+    private void touch(Entry entry) {
+        try {
+            Path file = bodyFile(entry.key);
+            if (Files.exists(file)) {
+                Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            }
+        } catch (IOException e) {
+            // 只影响重启后的淘汰顺序
+        }
+    }
+
+    private void delete(String key) {
+        try {
+            Files.deleteIfExists(metaFile(key));
+            Files.deleteIfExists(bodyFile(key));
+        } catch (IOException e) {
+            errorHandler.accept("Failed to delete HTTP cache entry " + key, e);
+        }
+    }
+
+    private static void move(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static Entry copy(Entry entry) {
+        Entry copy = new Entry();
+        copy.url = entry.url;
+        copy.key = entry.key;
+        copy.status = entry.status;
+        copy.statusText = entry.statusText;
+        copy.headers = entry.headers;
+        copy.storedAt = entry.storedAt;
+        copy.freshUntil = entry.freshUntil;
+        copy.size = entry.size;
+        copy.pinnedBy = entry.pinnedBy;
+        return copy;
+    }
+
+    private Path entryFile(String name) {
+        return directory.resolve(ENTRIES_DIR).resolve(name);
+    }
+
+    private Path bodyFile(String key) {
+        return entryFile(key + ".body");
+    }
+
+    private Path metaFile(String key) {
+        return entryFile(key + ".json");
+    }
+
+    private static long lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    static String stripFragment(String url) {
+        int hash = url.indexOf('#');
+        return hash >= 0 ? url.substring(0, hash) : url;
+    }
+
+    private static String keyOf(String url) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(url.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest, 0, 20);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.browser;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.components.Service;
+import org.cef.network.CefRequest;
+
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * 节省流量模式：在网络层拦截网页字体、媒体和第三方脚本，图片超过 {@link BrowserSettings.State#liteImageMaxKb}
+ * 时中途取消，不再下载和解码。允许列表中的站点不受限制。
+ * <p>
+ * 媒体请求发出时分辨不出是否自动播放，节省流量模式下全部拦截，需要播放的站点加入允许列表。
+ */
+@Service(Service.Level.APP)
+public final class LiteMode {
+
+    enum Action {
+        // 不处理
+        ALLOW,
+        // 取消请求
+        BLOCK,
+        // 响应体超过大小上限时取消
+        LIMIT_SIZE
+    }
+
+    // 开关和允许列表在 EDT 上修改、在 CEF 的 IO 线程上读取，读的是这两个副本；修改时同时写回设置，
+    // 允许列表整体替换
+    private volatile boolean enabled;
+    private volatile Set<String> allowedSites;
+
+    public LiteMode() {
+        BrowserSettings.State state = BrowserSettings.getInstance().getState();
+        enabled = state.liteMode;
+        allowedSites = Set.copyOf(state.liteModeAllowedSites);
+    }
+
+    public static LiteMode getInstance() {
+        return ApplicationManager.getApplication().getService(LiteMode.class);
+    }
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 打开或关闭节省流量模式，只在 EDT 上调用。
+     */
+    void setEnabled(boolean enabled) {
+        BrowserSettings.getInstance().getState().liteMode = enabled;
+        this.enabled = enabled;
+    }
+
+    /**
+     * 页面所在的站点是否在允许列表中，站点按主机名记录，同时包括它的子域名。
+     */
+    boolean isAllowed(String pageUrl) {
+        String host = pageUrl == null ? null : FilterIndex.hostOf(pageUrl.toLowerCase(Locale.ROOT));
+        if (host == null) {
+            return false;
+        }
+        for (String site : allowedSites) {
+            if (host.equals(site) || host.endsWith("." + site)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 把页面的主机名加入或移出允许列表，只在 EDT 上调用。
+     */
+    void setAllowed(String pageUrl, boolean allowed) {
+        String host = pageUrl == null ? null : FilterIndex.hostOf(pageUrl.toLowerCase(Locale.ROOT));
+        if (host == null) {
+            return;
+        }
+        BrowserSettings.State state = BrowserSettings.getInstance().getState();
+        // 移出时连同覆盖这个主机的上级域名一起移除，否则页面仍然不受限制
+        state.liteModeAllowedSites.removeIf(site -> host.equals(site) || host.endsWith("." + site));
+        if (allowed) {
+            state.liteModeAllowedSites.add(host);
+        }
+        allowedSites = Set.copyOf(state.liteModeAllowedSites);
+    }
+
+    long getImageMaxBytes() {
+        return BrowserSettings.getInstance().getState().liteImageMaxKb * 1024L;
+    }
+
+    /**
+     * 决定子资源请求的处理方式，会在 CEF 的 IO 线程上调用。
+     *
+     * @param url         请求地址
+     * @param documentUrl 发起请求的文档地址，用来判断脚本是否来自第三方
+     * @param pageUrl     标签页当前的页面地址，用来查询允许列表
+     */
+    Action check(String url, String documentUrl, String pageUrl, CefRequest.ResourceType type) {
+        if (!isEnabled() || type == null || url == null || !url.startsWith("http") || isAllowed(pageUrl)) {
+            return Action.ALLOW;
+        }
+        return switch (type) {
+            case RT_FONT_RESOURCE, RT_MEDIA -> Action.BLOCK;
+            case RT_IMAGE -> Action.LIMIT_SIZE;
+            case RT_SCRIPT, RT_WORKER, RT_SHARED_WORKER -> isThirdParty(url, documentUrl) ? Action.BLOCK : Action.ALLOW;
+            default -> Action.ALLOW;
+        };
+    }
+
+    private static boolean isThirdParty(String url, String documentUrl) {
+        String host = FilterIndex.hostOf(url.toLowerCase(Locale.ROOT));
+        String documentHost = documentUrl == null ? null : FilterIndex.hostOf(documentUrl.toLowerCase(Locale.ROOT));
+        return host != null && documentHost != null && !FilterIndex.sameBaseDomain(host, documentHost);
+    }
+}
@@ -0,0 +1,213 @@
+package com.browser;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntPredicate;
+
+/**
+ * Aho-Corasick 多模式匹配器：一次扫描文本即可找出所有出现的模式串，耗时只与文本长度有关，与模式数量无关。
+ * <p>
+ * 状态转移存放在一张以 (状态, 字符) 为键的开放寻址哈希表里，几万条规则也只占用几 MB 内存。
+ */
+final class MultiPatternMatcher {
+
+    private static final int NONE = -1;
+
+    private final TransitionTable transitions;
+    // 根状态的 ASCII 转移单独用数组存放：URL 扫描中绝大多数字符都会回到根状态
+    private final int[] rootTransitions;
+    private final int[] fail;
+    // 沿失败链最近的一个带输出的状态
+    private final int[] dictionaryLink;
+    // 每个状态上的第一个模式编号，同一状态上的其余模式通过 nextPattern 串起来
+    private final int[] firstPattern;
+    private final int[] nextPattern;
+
+    private MultiPatternMatcher(TransitionTable transitions, int[] fail, int[] dictionaryLink,
+                                int[] firstPattern, int[] nextPattern) {
+        this.transitions = transitions;
+        this.rootTransitions = new int[128];
+        for (char c = 0; c < rootTransitions.length; c++) {
+            rootTransitions[c] = transitions.get(0, c);
+        }
+        this.fail = fail;
+        this.dictionaryLink = dictionaryLink;
+        this.firstPattern = firstPattern;
+        this.nextPattern = nextPattern;
+    }
+
+    /**
+     * 编译模式串，模式编号即其在列表中的下标。空串会被忽略。
+     */
+    static MultiPatternMatcher build(List<String> patterns) {
+        int capacity = 16;
+        for (String pattern : patterns) {
+            capacity += pattern.length();
+        }
+        TransitionTable transitions = new TransitionTable(capacity);
+        int[] firstChild = new int[capacity];
+        int[] nextSibling = new int[capacity];
+        char[] edgeChar = new char[capacity];
+        int[] firstPattern = new int[capacity];
+        int[] nextPattern = new int[Math.max(1, patterns.size())];
+        Arrays.fill(firstChild, NONE);
+        Arrays.fill(firstPattern, NONE);
+        Arrays.fill(nextPattern, NONE);
+
+        // 第一步：构建字典树
+        int nodeCount = 1;
+        for (int id = 0; id < patterns.size(); id++) {
+            String pattern = patterns.get(id);
+            if (pattern.isEmpty()) {
+                continue;
+            }
+            int state = 0;
+            for (int i = 0; i < pattern.length(); i++) {
+                char c = pattern.charAt(i);
+                int next = transitions.get(state, c);
+                if (next == NONE) {
+                    next = nodeCount++;
+                    transitions.put(state, c, next);
+                    edgeChar[next] = c;
+                    nextSibling[next] = firstChild[state];
+                    firstChild[state] = next;
+                }
+                state = next;
+            }
+            nextPattern[id] = firstPattern[state];
+            firstPattern[state] = id;
+        }
+
+        // 第二步：按层遍历，计算失败链和输出链
+        int[] fail = new int[nodeCount];
+        int[] dictionaryLink = new int[nodeCount];
+        dictionaryLink[0] = NONE;
+        int[] queue = new int[nodeCount];
+        int head = 0;
+        int tail = 0;
+        for (int child = firstChild[0]; child != NONE; child = nextSibling[child]) {
+            fail[child] = 0;
+            dictionaryLink[child] = NONE;
+            queue[tail++] = child;
+        }
+        while (head < tail) {
+            int node = queue[head++];
+            for (int child = firstChild[node]; child != NONE; child = nextSibling[child]) {
+                char c = edgeChar[child];
+                int f = fail[node];
+                int target;
+                while ((target = transitions.get(f, c)) == NONE && f != 0) {
+                    f = fail[f];
+                }
+                fail[child] = target == NONE ? 0 : target;
+                int fallback = fail[child];
+                dictionaryLink[child] = firstPattern[fallback] != NONE ? fallback : dictionaryLink[fallback];
+                queue[tail++] = child;
+            }
+        }
+
+        return new MultiPatternMatcher(transitions, fail, dictionaryLink,
+                Arrays.copyOf(firstPattern, nodeCount), nextPattern);
+    }
+
+    /**
+     * 扫描文本，每找到一个模式就回调一次；回调返回 true 时立即停止并返回 true。
+     */
+    boolean search(CharSequence text, IntPredicate onMatch) {
+        int state = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            int next;
+            while ((next = next(state, c)) == NONE && state != 0) {
+                state = fail[state];
+            }
+            state = next == NONE ? 0 : next;
+            int node = firstPattern[state] != NONE ? state : dictionaryLink[state];
+            while (node > 0) {
+                for (int id = firstPattern[node]; id != NONE; id = nextPattern[id]) {
+                    if (onMatch.test(id)) {
+                        return true;
+                    }
+                }
+                node = dictionaryLink[node];
+            }
+        }
+        return false;
+    }
+
+    private int next(int state, char c) {
+        return state == 0 && c < rootTransitions.length ? rootTransitions[c] : transitions.get(state, c);
+    }
+
+    /**
+     * (状态, 字符) -> 状态 的开放寻址哈希表。
+     */
+    private static final class TransitionTable {
+
+        private long[] keys;
+        private int[] values;
+        private int size;
+
+        TransitionTable(int expected) {
+            int capacity = Integer.highestOneBit(Math.max(16, expected * 2 - 1)) << 1;
+            keys = new long[capacity];
+            values = new int[capacity];
+            Arrays.fill(keys, -1L);
+        }
+
+        int get(int state, char c) {
+            long key = key(state, c);
+            int mask = keys.length - 1;
+            for (int slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+                long current = keys[slot];
+                if (current == key) {
+                    return values[slot];
+                }
+                if (current == -1L) {
+                    return NONE;
+                }
+            }
+        }
+
+        void put(int state, char c, int target) {
+            if ((size + 1) * 2 > keys.length) {
+                resize();
+            }
+            insert(key(state, c), target);
+        }
+
+        private void insert(long key, int value) {
+            int mask = keys.length - 1;
+            int slot = hash(key) & mask;
+            while (keys[slot] != -1L) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            values[slot] = value;
+            size++;
+        }
+
+        private void resize() {
+            long[] oldKeys = keys;
+            int[] oldValues = values;
+            keys = new long[oldKeys.length * 2];
+            values = new int[oldValues.length * 2];
+            Arrays.fill(keys, -1L);
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != -1L) {
+                    insert(oldKeys[i], oldValues[i]);
+                }
+            }
+        }
+
+        private static long key(int state, char c) {
+            return ((long) state << 16) | c;
+        }
+
+        private static int hash(long key) {
+            key *= 0x9E3779B97F4A7C15L;
+            return (int) (key ^ (key >>> 32));
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package com.browser;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.Disposer;
+import com.intellij.ui.jcef.JBCefBrowser;
+import com.intellij.ui.jcef.JBCefJSQuery;
+import org.cef.browser.CefBrowser;
+import org.cef.browser.CefFrame;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * 页面和 Java 端之间的消息通道，每个浏览器一个，建立在一个 {@link JBCefJSQuery} 上。
+ * <p>
+ * 消息的格式都是 {@code {type, data}}。页面发来的是合并成一批的 JSON 数组，按类型分发给登记的处理器，
+ * data 按处理器声明的类型解析，处理器在 CEF 线程上执行；发给页面的消息交给注入脚本定义的
+ * {@code window.__ideaBrowserReceive}，由它逐层转发给子框架。
+ * <p>
+ * 查询函数对框架里的所有脚本可见，所以每个注入的框架分到一个随机令牌，发送的函数带着令牌，
+ * Java 端据此知道消息来自哪个框架；认不出令牌的消息直接丢弃。发送函数只作为参数交给注入脚本，
+ * 不放在页面的全局变量里。发给页面的消息同样带着主框架的接收令牌，页面自己的脚本调用接收函数不起作用。
+ */
+final class PageBridge implements Disposable {
+
+    private static final Logger LOG = Logger.getInstance(PageBridge.class);
+    private static final Gson GSON = new Gson();
+
+    // 令牌的长度，消息批次的 JSON 紧跟在令牌后面
+    private static final int TOKEN_LENGTH = 36;
+
+    /**
+     * 发送消息的框架：是否主框架，以及注入脚本时框架的地址。Java 端直接执行的查询没有地址。
+     */
+    record Sender(boolean main, String url) {
+    }
+
+    /**
+     * 注入一个框架时交给脚本的参数：带令牌的发送函数定义，以及接收 Java 端消息时核对的令牌。
+     */
+    record Channel(String postFunction, String receiveToken) {
+    }
+
+    private record Handler<T>(Class<T> type, boolean mainFrameOnly, BiConsumer<Sender, T> consumer) {
+
+        void accept(Sender sender, JsonElement data) {
+            if (mainFrameOnly && !sender.main()) {
+                return;
+            }
+            T value = GSON.fromJson(data, type);
+            if (value != null) {
+                consumer.accept(sender, value);
+            }
+        }
+    }
+
+    private final JBCefJSQuery query;
+    private final Map<String, Handler<?>> handlers = new ConcurrentHashMap<>();
+    // Java 端在主框架中直接执行的查询使用的令牌，不会出现在页面可以读到的地方
+    private final String directToken = UUID.randomUUID().toString();
+    // 当前页面和上一个页面各个框架的令牌，上一个页面离开时发出的最后一批消息仍然可以识别
+    private volatile Map<String, Sender> senders = new ConcurrentHashMap<>();
+    private volatile Map<String, Sender> previousSenders = Map.of();
+    // 当前主框架的接收令牌，注入脚本之前为 null
+    private volatile String mainReceiveToken;
+
+    PageBridge(JBCefBrowser browser) {
+        query = JBCefJSQuery.create(browser);
+        query.addHandler(json -> {
+            dispatch(json);
+            return null;
+        });
+    }
+
+    /**
+     * 登记一种消息的处理器，同一类型只保留最后登记的一个。
+     */
+    <T> void on(String type, Class<T> dataType, Consumer<T> consumer) {
+        handlers.put(type, new Handler<>(dataType, false, (sender, value) -> consumer.accept(value)));
+    }
+
+    /**
+     * 登记只接受主框架发来的消息的处理器，处理器同时拿到发送的框架，用来核对地址。
+     */
+    <T> void onMainFrame(String type, Class<T> dataType, BiConsumer<Sender, T> consumer) {
+        handlers.put(type, new Handler<>(dataType, true, consumer));
+    }
+
+    /**
+     * 给框架分配令牌，返回注入脚本用到的通道。发送函数的参数是消息数组的 JSON 字符串。在 CEF 线程上调用。
+     */
+    Channel open(CefFrame frame) {
+        String token = UUID.randomUUID().toString();
+        senders.put(token, new Sender(frame.isMain(), frame.getURL()));
+        String receiveToken = UUID.randomUUID().toString();
+        if (frame.isMain()) {
+            mainReceiveToken = receiveToken;
+        }
+        return new Channel("function (json) { " + query.inject(GSON.toJson(token) + " + json") + " }", receiveToken);
+    }
+
+    /**
+     * 主框架开始加载新页面，之前分配的令牌只保留到下一个页面开始加载。在 CEF 线程上调用。
+     */
+    void pageStarted() {
+        previousSenders = senders;
+        senders = new ConcurrentHashMap<>();
+        mainReceiveToken = null;
+    }
+
+    /**
+     * 把一个返回消息数组 JSON 字符串的表达式发回 Java 端，用于不依赖注入脚本的一次性查询，只在主框架中执行。
+     */
+    String inject(String batchExpression) {
+        return query.inject(GSON.toJson(directToken) + " + " + batchExpression);
+    }
+
+    /**
+     * 给页面的主框架发送一条消息，由它转发给子框架。注入脚本还没有执行时消息被丢弃。
+     */
+    void send(CefBrowser browser, String type, JsonObject data) {
+        String token = mainReceiveToken;
+        if (token == null) {
+            return;
+        }
+        JsonObject message = new JsonObject();
+        message.addProperty("type", type);
+        if (data != null) {
+            message.add("data", data);
+        }
+        browser.executeJavaScript("if (window.__ideaBrowserReceive) { window.__ideaBrowserReceive("
+                + GSON.toJson(token) + ", " + message + "); }", browser.getURL(), 0);
+    }
+
+    private void dispatch(String payload) {
+        Sender sender = senderOf(payload);
+        if (sender == null) {
+            LOG.debug("Dropped page message batch from an unknown sender");
+            return;
+        }
+        String json = payload.substring(TOKEN_LENGTH);
+        JsonElement batch;
+        try {
+            batch = JsonParser.parseString(json);
+        } catch (JsonParseException e) {
+            LOG.warn("Unexpected page message batch", e);
+            return;
+        }
+        if (!batch.isJsonArray()) {
+            LOG.warn("Unexpected page message batch: " + json);
+            return;
+        }
+        // 一条消息格式不对时跳过它，不影响同一批的其他消息
+        for (JsonElement element : batch.getAsJsonArray()) {
+            JsonObject message = element.isJsonObject() ? element.getAsJsonObject() : null;
+            JsonElement type = message != null ? message.get("type") : null;
+            Handler<?> handler = type != null && type.isJsonPrimitive() ? handlers.get(type.getAsString()) : null;
+            if (handler == null || !message.has("data")) {
+                continue;
+            }
+            try {
+                handler.accept(sender, message.get("data"));
+            } catch (JsonParseException e) {
+                LOG.warn("Unexpected page message " + type.getAsString(), e);
+            }
+        }
+    }
+
+    private Sender senderOf(String payload) {
+        if (payload == null || payload.length() < TOKEN_LENGTH) {
+            return null;
+        }
+        String token = payload.substring(0, TOKEN_LENGTH);
+        if (token.equals(directToken)) {
+            return new Sender(true, null);
+        }
+        Sender sender = senders.get(token);
+        return sender != null ? sender : previousSenders.get(token);
+    }
+
+    @Override
+    public void dispose() {
+        Disposer.dispose(query);
+        handlers.clear();
+        senders.clear();
+        previousSenders = Map.of();
+        mainReceiveToken = null;
+    }
+}
@@ -0,0 +1,44 @@
+package com.browser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 注入页面的脚本和样式表，保存在插件资源的 scripts 目录下，类加载时读取一次。
+ * <p>
+ * 脚本不依赖 Java 端，基准测试直接在浏览器中加载同一批文件，见 benchmark 源码集。
+ */
+final class PageScripts {
+
+    private static final String SCRIPTS_DIR = "/scripts/";
+
+    // 共享的 DOM 变化调度器和性能统计，其余脚本都通过它定义的 runtime 注册处理器
+    static final String RUNTIME = load("runtime.js");
+    // 深色主题引擎
+    static final String DARK_THEME = load("dark-theme.js");
+    // 广告元素移除和链接的 target="_blank" 移除
+    static final String PAGE_CLEANUP = load("page-cleanup.js");
+    // 深色主题的基础样式表
+    static final String DARK_CSS = load("dark-theme.css");
+    // 页面开始加载时注入样式表的函数，参数为样式表 id 和内容
+    static final String EARLY_STYLE = load("early-style.js");
+    // 每个框架加载完成时注入的全部脚本，包在一个函数表达式里，调用时传入配置、带令牌的发送函数和接收令牌。
+    // 这些都只是参数，不经过页面的全局变量，页面里的其他脚本拿不到
+    static final String BUNDLE = "(function (initialConfig, postBatch, receiveToken) {\n"
+            + RUNTIME + DARK_THEME + PAGE_CLEANUP + "\n})";
+
+    private PageScripts() {
+    }
+
+    private static String load(String name) {
+        try (InputStream in = PageScripts.class.getResourceAsStream(SCRIPTS_DIR + name)) {
+            if (in == null) {
+                throw new IllegalStateException("Missing page script " + name);
+            }
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to read page script " + name, e);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.browser;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 一次页面加载的性能数据：CEF 加载回调的耗时、页面的导航计时，以及注入脚本各部分的耗时和计数。
+ * <p>
+ * 数据由 CEF 线程和 JS 查询回调写入，所有方法都加锁；界面和导出只使用 {@link #copy()} 得到的副本。
+ */
+final class PageStats {
+
+    /**
+     * 注入脚本中一个部分的累计耗时。
+     */
+    static final class Timing {
+        long calls;
+        double totalMs;
+        double maxMs;
+    }
+
+    final String url;
+    final String origin;
+    final long startedAt;
+    private final transient long startNanos;
+    private double loadMs = -1;
+    private int httpStatus;
+    private String error;
+    private int blockedRequests;
+    private final Map<String, Double> navigation = new LinkedHashMap<>();
+    private final Map<String, Timing> scripts = new LinkedHashMap<>();
+    private final Map<String, Long> counters = new LinkedHashMap<>();
+
+    PageStats(String url) {
+        this(url, System.currentTimeMillis(), System.nanoTime());
+    }
+
+    private PageStats(String url, long startedAt, long startNanos) {
+        this.url = url;
+        this.origin = ThemeRuleCache.originOf(url);
+        this.startedAt = startedAt;
+        this.startNanos = startNanos;
+    }
+
+    synchronized void loadFinished(int httpStatus) {
+        this.loadMs = (System.nanoTime() - startNanos) / 1_000_000.0;
+        this.httpStatus = httpStatus;
+    }
+
+    synchronized void loadFailed(String error) {
+        this.loadMs = (System.nanoTime() - startNanos) / 1_000_000.0;
+        this.error = error;
+    }
+
+    synchronized void requestBlocked() {
+        blockedRequests++;
+    }
+
+    /**
+     * 合并注入脚本报告的一批数据，脚本每次只报告上次之后新增的部分。
+     */
+    synchronized void merge(Map<String, Double> navigation, Map<String, Timing> scripts, Map<String, Long> counters) {
+        if (navigation != null) {
+            this.navigation.putAll(navigation);
+        }
+        if (scripts != null) {
+            scripts.forEach((name, delta) -> {
+                Timing timing = this.scripts.computeIfAbsent(name, key -> new Timing());
+                timing.calls += delta.calls;
+                timing.totalMs += delta.totalMs;
+                timing.maxMs = Math.max(timing.maxMs, delta.maxMs);
+            });
+        }
+        if (counters != null) {
+            counters.forEach((name, delta) -> this.counters.merge(name, delta, Long::sum));
+        }
+    }
+
+    synchronized PageStats copy() {
+        PageStats copy = new PageStats(url, startedAt, startNanos);
+        copy.loadMs = loadMs;
+        copy.httpStatus = httpStatus;
+        copy.error = error;
+        copy.blockedRequests = blockedRequests;
+        copy.merge(navigation, scripts, counters);
+        return copy;
+    }
+
+    /**
+     * 页面加载耗时（毫秒），还没有加载完成时为 -1。
+     */
+    double getLoadMs() {
+        return loadMs;
+    }
+
+    int getHttpStatus() {
+        return httpStatus;
+    }
+
+    String getError() {
+        return error;
+    }
+
+    int getBlockedRequests() {
+        return blockedRequests;
+    }
+
+    /**
+     * 导航计时中的一项（毫秒），没有数据时为 -1。
+     */
+    double getNavigation(String name) {
+        return navigation.getOrDefault(name, -1.0);
+    }
+
+    double getScriptMs(String name) {
+        Timing timing = scripts.get(name);
+        return timing != null ? timing.totalMs : 0;
+    }
+
+    long getCounter(String name) {
+        return counters.getOrDefault(name, 0L);
+    }
+}
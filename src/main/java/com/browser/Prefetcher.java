@@ -0,0 +1,229 @@
+package com.browser;
+
+import com.intellij.ide.IdeEventQueue;
+import com.intellij.ide.PowerSaveMode;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.components.Service;
+import com.intellij.ui.jcef.JBCefApp;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 预先连接和预取最常打开的页面，缩短点击书签之后的首屏时间。
+ * <p>
+ * IDE 空闲一段时间后取出 frecency 最高的几个页面，鼠标停在书签上时取这个书签，并排在队列最前面。
+ * 经过磁盘缓存（{@link BrowserCache}）的页面把文档预取进缓存，打开时直接从磁盘返回或者只需重新验证；
+ * 其他页面只发一个 HEAD 请求，提前完成 DNS、TCP 和 TLS 握手，连接留在 CEF 的连接池里。
+ * <p>
+ * 同时进行的请求数量和每小时的下载量都有上限，同一页面短时间内不重复预取，节能模式下不预取。
+ */
+@Service(Service.Level.APP)
+public final class Prefetcher implements Disposable {
+
+    // IDE 空闲多久（毫秒）后开始预取
+    private static final int IDLE_TIMEOUT_MS = 30_000;
+    // 同一页面两次预取的最短间隔（毫秒）
+    private static final long REFETCH_INTERVAL_MS = 10 * 60 * 1000;
+    // 下载量预算的统计窗口（毫秒）
+    private static final long BUDGET_WINDOW_MS = 60 * 60 * 1000;
+    private static final int MAX_QUEUED = 20;
+    // 超过这个时间（毫秒）还没有回调的请求不再占用名额，回调永远不来时预取也不会停下
+    private static final long REQUEST_TIMEOUT_MS = 60_000;
+
+    private record Download(long time, long bytes) {
+    }
+
+    // 一个正在进行的预取占用的名额，请求完成、超时或者服务关闭时释放，只释放一次
+    private static final class Slot {
+        final String url;
+        final long startTime;
+        volatile CefNetwork network;
+
+        Slot(String url, long startTime) {
+            this.url = url;
+            this.startTime = startTime;
+        }
+    }
+
+    private final Runnable idleListener = this::prefetchTopPages;
+    private boolean started;
+    // 以下字段由 this 的锁保护
+    private final ArrayDeque<String> queue = new ArrayDeque<>();
+    private final Map<String, Long> lastPrefetch = new HashMap<>();
+    private final ArrayDeque<Download> downloads = new ArrayDeque<>();
+    private final List<Slot> running = new ArrayList<>();
+    private boolean disposed;
+
+    public static Prefetcher getInstance() {
+        return ApplicationManager.getApplication().getService(Prefetcher.class);
+    }
+
+    /**
+     * 开始在 IDE 空闲时预取，只在 EDT 上调用，重复调用没有影响。
+     */
+    void start() {
+        if (!started) {
+            started = true;
+            IdeEventQueue.getInstance().addIdleListener(idleListener, IDLE_TIMEOUT_MS);
+        }
+    }
+
+    /**
+     * 鼠标停在书签上，用户很可能马上打开它。
+     */
+    void hover(String url) {
+        if (isAllowed()) {
+            startAll(enqueue(List.of(url), true));
+        }
+    }
+
+    private void prefetchTopPages() {
+        if (isAllowed()) {
+            int limit = BrowserSettings.getInstance().getState().prefetchTopPages;
+            BrowserHistory.getInstance().topUrls(limit, urls -> startAll(enqueue(urls, false)));
+        }
+    }
+
+    // 浏览器还没启动时不为了预取启动 CEF
+    private static boolean isAllowed() {
+        return BrowserSettings.getInstance().getState().prefetchEnabled && !PowerSaveMode.isEnabled() && JBCefApp.isStarted();
+    }
+
+    /**
+     * 放入队列，返回现在可以开始的预取。请求在锁外发出，CEF 的回调可能在发出请求的过程中到达。
+     */
+    private synchronized List<Slot> enqueue(List<String> urls, boolean first) {
+        if (disposed) {
+            return List.of();
+        }
+        long now = System.currentTimeMillis();
+        lastPrefetch.values().removeIf(time -> now - time > REFETCH_INTERVAL_MS);
+        List<String> accepted = new ArrayList<>();
+        for (String url : urls) {
+            if (url != null && url.startsWith("http") && !lastPrefetch.containsKey(url) && !queue.contains(url)) {
+                accepted.add(url);
+            }
+        }
+        if (first) {
+            for (int i = accepted.size() - 1; i >= 0; i--) {
+                queue.addFirst(accepted.get(i));
+            }
+        } else {
+            queue.addAll(accepted);
+        }
+        while (queue.size() > MAX_QUEUED) {
+            queue.removeLast();
+        }
+        return takeRunnable(now);
+    }
+
+    // 调用方持有锁
+    private List<Slot> takeRunnable(long now) {
+        // 先收回超时的名额。CefURLRequest 只能在创建它的线程上取消，这里不取消，之后的回调被忽略
+        running.removeIf(slot -> now - slot.startTime > REQUEST_TIMEOUT_MS);
+        int maxConcurrent = Math.max(1, BrowserSettings.getInstance().getState().prefetchMaxConcurrent);
+        List<Slot> runnable = new ArrayList<>();
+        while (running.size() < maxConcurrent && !queue.isEmpty()) {
+            String url = queue.pollFirst();
+            lastPrefetch.put(url, now);
+            Slot slot = new Slot(url, now);
+            running.add(slot);
+            runnable.add(slot);
+        }
+        return runnable;
+    }
+
+    private void startAll(List<Slot> slots) {
+        for (Slot slot : slots) {
+            boolean requested = false;
+            try {
+                start(slot);
+                requested = true;
+            } finally {
+                // 创建请求时出错，回调不会到来
+                if (!requested) {
+                    finished(slot);
+                }
+            }
+        }
+    }
+
+    private void start(Slot slot) {
+        long budget = remainingBudget();
+        BrowserCache cache = BrowserCache.getInstance();
+        if (budget > 0 && cache.handles(slot.url)) {
+            slot.network = new CefNetwork("GET", null, null, budget);
+            cache.prefetch(slot.url, slot.network, response -> finished(slot));
+        } else {
+            // 只建立连接，不下载内容
+            slot.network = new CefNetwork("HEAD", null, null, 0);
+            slot.network.fetch(slot.url, Map.of(), new HttpDiskCache.NetworkCallback() {
+                @Override
+                public void completed(int status, String statusText, Map<String, String> headers, byte[] body) {
+                    finished(slot);
+                }
+
+                @Override
+                public void failed(String error) {
+                    finished(slot);
+                }
+            });
+        }
+    }
+
+    private void finished(Slot slot) {
+        List<Slot> next;
+        synchronized (this) {
+            // 超时或者服务关闭时已经释放过
+            if (!running.remove(slot)) {
+                return;
+            }
+            long now = System.currentTimeMillis();
+            CefNetwork network = slot.network;
+            if (network != null && network.getReceivedBytes() > 0) {
+                downloads.add(new Download(now, network.getReceivedBytes()));
+            }
+            if (isAllowed()) {
+                next = takeRunnable(now);
+            } else {
+                // 中途打开了节能模式或关闭了预取
+                queue.clear();
+                next = List.of();
+            }
+        }
+        startAll(next);
+    }
+
+    private synchronized long remainingBudget() {
+        long now = System.currentTimeMillis();
+        long used = 0;
+        for (Iterator<Download> iterator = downloads.iterator(); iterator.hasNext(); ) {
+            Download download = iterator.next();
+            if (now - download.time() > BUDGET_WINDOW_MS) {
+                iterator.remove();
+            } else {
+                used += download.bytes();
+            }
+        }
+        return BrowserSettings.getInstance().getState().prefetchBudgetMbPerHour * 1024L * 1024L - used;
+    }
+
+    @Override
+    public void dispose() {
+        if (started) {
+            IdeEventQueue.getInstance().removeIdleListener(idleListener);
+        }
+        // 进行中的请求不再占用名额，之后到达的回调被忽略
+        synchronized (this) {
+            disposed = true;
+            queue.clear();
+            running.clear();
+        }
+    }
+}
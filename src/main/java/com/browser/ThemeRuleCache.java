@@ -0,0 +1,297 @@
+package com.browser;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.components.Service;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.util.concurrency.AppExecutorUtil;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * 按站点（origin）缓存深色主题需要额外覆盖的选择器。
+ * <p>
+ * 第一次以深色模式访问某个站点时，注入脚本把需要改背景色的元素的选择器报告回来；之后再访问同一站点时，
+ * 这些规则和基础样式表一起在页面开始加载时注入，不必等页面加载完再处理。
+ * <p>
+ * 每个站点一个 JSON 文件，保存在插件目录下的 theme-cache 文件夹中。总大小超过
+ * {@link BrowserSettings.State#themeCacheMaxKb} 时按最近最少使用的顺序删除，使用顺序通过文件修改时间持久化。
+ * 全部条目在后台读入内存，查询不访问磁盘。
+ */
+@Service(Service.Level.APP)
+public final class ThemeRuleCache {
+
+    private static final Logger LOG = Logger.getInstance(ThemeRuleCache.class);
+    private static final String CACHE_DIR = "theme-cache";
+    // 每个站点最多保存的选择器数量
+    private static final int MAX_SELECTORS = 500;
+
+    private static class Entry {
+        String origin;
+        Set<String> light = new LinkedHashSet<>();
+        Set<String> selected = new LinkedHashSet<>();
+        transient String rules;
+        transient long size;
+    }
+
+    // 按访问顺序排列，最早的条目最先被淘汰
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final ExecutorService ioExecutor = AppExecutorUtil.createBoundedApplicationPoolExecutor("Browser Theme Cache", 1);
+    // 本次运行中已经更新过文件修改时间的站点，每个站点只更新一次
+    private final Set<String> touched = ConcurrentHashMap.newKeySet();
+    private long totalSize;
+    private volatile boolean loaded;
+
+    public ThemeRuleCache() {
+        ioExecutor.execute(this::load);
+    }
+
+    public static ThemeRuleCache getInstance() {
+        return ApplicationManager.getApplication().getService(ThemeRuleCache.class);
+    }
+
+    /**
+     * 取出站点缓存的全部选择器，注入脚本检查元素时跳过已经被规则覆盖的元素。没有缓存时返回 null，不更新使用顺序。
+     */
+    List<String> getSelectors(String origin) {
+        if (origin == null || !loaded) {
+            return null;
+        }
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(origin);
+        }
+        if (entry == null) {
+            return null;
+        }
+        List<String> selectors = new ArrayList<>(entry.light);
+        selectors.addAll(entry.selected);
+        return selectors;
+    }
+
+    /**
+     * 取出站点缓存的规则，没有缓存时返回 null。会在 CEF 线程上调用。
+     */
+    String getRules(String origin) {
+        if (origin == null || !loaded) {
+            return null;
+        }
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(origin);
+        }
+        if (entry == null) {
+            return null;
+        }
+        // 记录访问时间，重启后仍能保持淘汰顺序。每个框架开始加载时都会查询，一次运行中每个站点只写一次磁盘
+        if (touched.add(entry.origin)) {
+            ioExecutor.execute(() -> touch(entry.origin));
+        }
+        return entry.rules;
+    }
+
+    /**
+     * 合并注入脚本报告的选择器并写回磁盘。
+     */
+    void record(String origin, List<String> light, List<String> selected) {
+        if (origin == null || !loaded) {
+            return;
+        }
+        // 条目创建后不再修改，合并时生成新条目，后台写文件时不需要加锁
+        Entry entry = new Entry();
+        entry.origin = origin;
+        synchronized (entries) {
+            Entry previous = entries.get(origin);
+            if (previous != null) {
+                entry.light.addAll(previous.light);
+                entry.selected.addAll(previous.selected);
+            }
+            boolean changed = addAll(entry.light, light) | addAll(entry.selected, selected);
+            if (!changed) {
+                return;
+            }
+            entry.rules = DarkTheme.rules(entry.light, entry.selected);
+            put(entry);
+        }
+        ioExecutor.execute(() -> save(entry));
+    }
+
+    /**
+     * 取出 URL 的 origin（协议、主机和端口），不是 http(s) 地址时返回 null。
+     */
+    static String originOf(String url) {
+        if (url == null || !url.startsWith("http")) {
+            return null;
+        }
+        try {
+            URI uri = new URI(url);
+            if (uri.getHost() == null) {
+                return null;
+            }
+            String origin = uri.getScheme() + "://" + uri.getHost();
+            return uri.getPort() >= 0 ? origin + ":" + uri.getPort() : origin;
+        } catch (URISyntaxException e) {
+            return null;
+        }
+    }
+
+    private static boolean addAll(Set<String> target, List<String> selectors) {
+        boolean changed = false;
+        if (selectors != null) {
+            for (String selector : selectors) {
+                if (target.size() >= MAX_SELECTORS) {
+                    break;
+                }
+                if (isSafeSelector(selector)) {
+                    changed |= target.add(selector);
+                }
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * 选择器会直接拼进样式表，不能包含闭合规则、结束声明或者开始注释的字符：一个 {@code /*} 就能把后面的规则全部注释掉。
+     */
+    private static boolean isSafeSelector(String selector) {
+        return selector != null && !selector.isBlank() && selector.indexOf('{') < 0 && selector.indexOf('}') < 0
+                && selector.indexOf('<') < 0 && selector.indexOf(';') < 0 && !selector.contains("/*")
+                && !selector.contains("*/");
+    }
+
+    // 磁盘上的文件可能来自旧版本或者被改过，读入时按同样的规则重新过滤
+    private static Set<String> safeSelectors(Set<String> selectors) {
+        Set<String> result = new LinkedHashSet<>();
+        if (selectors != null) {
+            for (String selector : selectors) {
+                if (result.size() < MAX_SELECTORS && isSafeSelector(selector)) {
+                    result.add(selector);
+                }
+            }
+        }
+        return result;
+    }
+
+    // 调用方持有 entries 的锁
+    private void put(Entry entry) {
+        entry.size = entry.rules.length() * 2L;
+        Entry previous = entries.put(entry.origin, entry);
+        totalSize += entry.size - (previous != null ? previous.size : 0);
+        long maxSize = BrowserSettings.getInstance().getState().themeCacheMaxKb * 1024L;
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (totalSize > maxSize && iterator.hasNext()) {
+            Entry eldest = iterator.next();
+            if (eldest == entry) {
+                break;
+            }
+            iterator.remove();
+            totalSize -= eldest.size;
+            ioExecutor.execute(() -> delete(eldest.origin));
+        }
+    }
+
+    private void load() {
+        Path dir = getCacheDir();
+        List<Path> files = new ArrayList<>();
+        if (Files.isDirectory(dir)) {
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*.json")) {
+                stream.forEach(files::add);
+            } catch (IOException e) {
+                LOG.warn("Failed to list theme cache", e);
+            }
+        }
+        // 按修改时间从旧到新放进访问顺序表
+        files.sort(Comparator.comparingLong(ThemeRuleCache::lastModified));
+        Gson gson = new Gson();
+        synchronized (entries) {
+            for (Path file : files) {
+                try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                    Entry entry = gson.fromJson(reader, Entry.class);
+                    if (entry != null && entry.origin != null) {
+                        entry.light = safeSelectors(entry.light);
+                        entry.selected = safeSelectors(entry.selected);
+                        entry.rules = DarkTheme.rules(entry.light, entry.selected);
+                        put(entry);
+                    }
+                } catch (IOException | JsonParseException e) {
+                    LOG.warn("Failed to read theme cache file " + file, e);
+                }
+            }
+        }
+        loaded = true;
+    }
+
+    private void save(Entry entry) {
+        Path file = getCacheFile(entry.origin);
+        try {
+            Files.createDirectories(file.getParent());
+            try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+                new Gson().toJson(entry, writer);
+            }
+        } catch (IOException e) {
+            LOG.warn("Failed to save theme cache for " + entry.origin, e);
+        }
+    }
+
+    private void touch(String origin) {
+        Path file = getCacheFile(origin);
+        try {
+            if (Files.exists(file)) {
+                Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            }
+        } catch (IOException e) {
+            LOG.debug("Failed to touch theme cache for " + origin, e);
+        }
+    }
+
+    private void delete(String origin) {
+        try {
+            Files.deleteIfExists(getCacheFile(origin));
+        } catch (IOException e) {
+            LOG.warn("Failed to delete theme cache for " + origin, e);
+        }
+    }
+
+    private static long lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static Path getCacheDir() {
+        return Paths.get(PathManager.getPluginsPath(), "browser", CACHE_DIR);
+    }
+
+    private static Path getCacheFile(String origin) {
+        StringBuilder name = new StringBuilder();
+        for (char c : origin.toLowerCase(Locale.ROOT).toCharArray()) {
+            name.append(c >= 'a' && c <= 'z' || c >= '0' && c <= '9' || c == '.' || c == '-' ? c : '_');
+        }
+        return getCacheDir().resolve(name + ".json");
+    }
+}
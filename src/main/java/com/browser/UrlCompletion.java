@@ -0,0 +1,153 @@
+package com.browser;
+
+import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import java.awt.*;
+import java.awt.event.FocusAdapter;
+import java.awt.event.FocusEvent;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * 地址栏的输入补全：输入时在后台查询历史和书签，在地址栏下方弹出候选列表。
+ * <p>
+ * 上下键选择，回车打开选中的地址，Esc 关闭；弹出列表不获取焦点，不影响继续输入。
+ */
+final class UrlCompletion {
+
+    private static final int MAX_SUGGESTIONS = 10;
+
+    private final JTextField field;
+    private final Consumer<String> onChoose;
+    private final DefaultListModel<BrowserHistory.Suggestion> model = new DefaultListModel<>();
+    private final JList<BrowserHistory.Suggestion> list = new JList<>(model);
+    private final JPopupMenu popup = new JPopupMenu();
+    // 程序设置地址栏内容时不触发补全
+    private boolean updating;
+
+    UrlCompletion(JTextField field, Consumer<String> onChoose) {
+        this.field = field;
+        this.onChoose = onChoose;
+        list.setFocusable(false);
+        list.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        popup.setFocusable(false);
+        popup.add(list);
+
+        field.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                textChanged();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                textChanged();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+            }
+        });
+        // 键盘监听先于地址栏的回车动作执行：回车时先把选中的候选填入地址栏，再由地址栏加载
+        field.addKeyListener(new KeyAdapter() {
+            @Override
+            public void keyPressed(KeyEvent e) {
+                if (!popup.isVisible()) {
+                    return;
+                }
+                switch (e.getKeyCode()) {
+                    case KeyEvent.VK_DOWN -> {
+                        list.setSelectedIndex(Math.min(list.getSelectedIndex() + 1, model.size() - 1));
+                        e.consume();
+                    }
+                    case KeyEvent.VK_UP -> {
+                        list.setSelectedIndex(Math.max(list.getSelectedIndex() - 1, 0));
+                        e.consume();
+                    }
+                    case KeyEvent.VK_ESCAPE -> {
+                        hide();
+                        e.consume();
+                    }
+                    case KeyEvent.VK_ENTER -> {
+                        BrowserHistory.Suggestion selected = list.getSelectedValue();
+                        if (selected != null) {
+                            setText(selected.url());
+                        }
+                        hide();
+                    }
+                    default -> {
+                    }
+                }
+            }
+        });
+        field.addFocusListener(new FocusAdapter() {
+            @Override
+            public void focusLost(FocusEvent e) {
+                hide();
+            }
+        });
+        list.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                BrowserHistory.Suggestion selected = list.getSelectedValue();
+                if (selected != null) {
+                    setText(selected.url());
+                    hide();
+                    onChoose.accept(selected.url());
+                }
+            }
+        });
+    }
+
+    /**
+     * 设置地址栏内容，不弹出补全，例如页面跳转后显示新地址。
+     */
+    void setText(String text) {
+        updating = true;
+        try {
+            field.setText(text);
+        } finally {
+            updating = false;
+        }
+        hide();
+    }
+
+    private void textChanged() {
+        if (updating) {
+            return;
+        }
+        String text = field.getText().trim();
+        if (!field.isFocusOwner() || text.isEmpty()) {
+            hide();
+            return;
+        }
+        BrowserHistory.getInstance().search(text, MAX_SUGGESTIONS, this::show);
+    }
+
+    private void show(List<BrowserHistory.Suggestion> suggestions) {
+        if (suggestions.isEmpty() || !field.isFocusOwner()) {
+            popup.setVisible(false);
+            return;
+        }
+        model.clear();
+        model.addAll(suggestions);
+        list.clearSelection();
+        popup.setPreferredSize(new Dimension(field.getWidth(), list.getPreferredSize().height + popup.getInsets().top
+                + popup.getInsets().bottom));
+        if (popup.isVisible()) {
+            popup.pack();
+        } else {
+            popup.show(field, 0, field.getHeight());
+        }
+    }
+
+    private void hide() {
+        BrowserHistory.getInstance().cancelSearch();
+        popup.setVisible(false);
+    }
+}
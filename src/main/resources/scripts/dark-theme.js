@@ -0,0 +1,258 @@
+// ==================== 深色主题引擎 ====================
+// 以注入的样式表为主：一张 <style> 覆盖绝大多数元素，开销与 DOM 规模无关；
+// 只有少量候选元素需要读取计算样式，并且分批放在空闲时间处理。
+// iframe 不在这里遍历，每个框架加载完成时由 Java 端单独注入，跨域 iframe 同样覆盖。
+// 脚本总是注入，是否生效由配置的 darkMode 决定，切换深色模式时 Java 端只发送配置更新，不重新加载页面。
+(function () {
+    // 已经注入过
+    if (!runtime) {
+        return;
+    }
+
+    const STYLE_ID = 'idea-browser-dark-style';
+    const DARK_BG_CLASS = 'idea-browser-dark-bg';
+    const SELECTED_BG_CLASS = 'idea-browser-selected-bg';
+    // 需要读取计算样式的候选元素：布局容器和常见的卡片、面板类，其余元素全部交给样式表
+    const CANDIDATE_SELECTOR = 'body > *, body > * > *, body > * > * > *, main, aside, section, article, '
+        + 'table, th, td, dialog, [role="dialog"], [role="main"], [class*="card"], [class*="panel"], '
+        + '[class*="modal"], [class*="header"], [class*="content"], [class*="container"], '
+        + '[class*="wrapper"], [class*="box"], [class*="popup"], [class*="menu"]';
+    // 首次加载最多抽查的元素数量，超出部分只依赖样式表
+    const MAX_INITIAL_CANDIDATES = 2000;
+    // 每个新增子树最多抽查的元素数量
+    const MAX_MUTATION_CANDIDATES = 100;
+    // 首次加载时每个任务读取计算样式的元素数量
+    const BATCH_SIZE = 200;
+    // 每个页面最多报告的选择器数量
+    const MAX_REPORTED = 500;
+
+    // 基础样式表由 Java 端提供，与开始加载时注入的样式表相同
+    const DARK_CSS = runtime.config.darkCss;
+
+    // 注入深色样式表，已经有样式表（开始加载时注入的）时不重复注入
+    function ensureStyle(rules) {
+        if (!document.documentElement || document.getElementById(STYLE_ID)) {
+            return;
+        }
+        const style = document.createElement('style');
+        style.id = STYLE_ID;
+        style.textContent = DARK_CSS + (rules || '');
+        (document.head || document.documentElement).appendChild(style);
+    }
+
+    function removeStyle() {
+        const style = document.getElementById(STYLE_ID);
+        if (style) {
+            style.remove();
+        }
+    }
+
+    // 判断背景色：'light' 表示白色或接近白色，'selected' 表示旧的选中灰色
+    function classify(color) {
+        const start = color ? color.indexOf('(') : -1;
+        if (start < 0) {
+            return null;
+        }
+        const parts = color.slice(start + 1, color.indexOf(')')).split(',').map(parseFloat);
+        if (parts.length > 3 && parts[3] < 0.5) {
+            return null;
+        }
+        const [r, g, b] = parts;
+        if (r === 214 && g === 214 && b === 214) {
+            return 'selected';
+        }
+        const luminance = (0.2126 * r + 0.7152 * g + 0.0722 * b) / 255;
+        return luminance > 0.85 ? 'light' : null;
+    }
+
+    const seen = new WeakSet();
+    // 站点缓存的选择器合成的选择器列表，已经被缓存规则覆盖的元素不再读取计算样式
+    let cachedMatcher = null;
+
+    // 选择器会拼进样式表并在同站点的其他页面复用，浏览器不认识的选择器不报告也不使用
+    function isValidSelector(selector) {
+        return typeof selector === 'string' && selector.length > 0 && CSS.supports('selector(' + selector + ')');
+    }
+
+    // 尚未检查过、也没有被缓存规则覆盖的候选元素
+    function accept(element, result) {
+        if (seen.has(element)) {
+            return;
+        }
+        seen.add(element);
+        if (!cachedMatcher || !element.matches(cachedMatcher)) {
+            result.push(element);
+        }
+    }
+
+    // 收集节点及其子树中的候选元素，数量受 limit 限制
+    function collect(root, limit) {
+        const result = [];
+        if (root.matches(CANDIDATE_SELECTOR)) {
+            accept(root, result);
+        }
+        const found = root.querySelectorAll(CANDIDATE_SELECTOR);
+        for (let i = 0; i < found.length && result.length < limit; i++) {
+            accept(found[i], result);
+        }
+        return result;
+    }
+
+    // 为元素生成一个可以在同站点其他页面复用的选择器：优先使用类名，其次 id，最后是有限深度的位置路径
+    function selectorOf(element, depth) {
+        const tag = element.tagName.toLowerCase();
+        if (tag === 'html' || tag === 'body') {
+            return tag;
+        }
+        const classes = Array.from(element.classList)
+            .filter(name => name !== DARK_BG_CLASS && name !== SELECTED_BG_CLASS)
+            .slice(0, 3);
+        if (classes.length > 0) {
+            return tag + classes.map(name => '.' + CSS.escape(name)).join('');
+        }
+        if (element.id) {
+            return '#' + CSS.escape(element.id);
+        }
+        const parent = element.parentElement;
+        if (!parent || depth >= 3) {
+            return null;
+        }
+        const parentSelector = selectorOf(parent, depth + 1);
+        if (!parentSelector) {
+            return null;
+        }
+        let index = 1;
+        for (let sibling = element.previousElementSibling; sibling; sibling = sibling.previousElementSibling) {
+            if (sibling.tagName === element.tagName) {
+                index++;
+            }
+        }
+        return parentSelector + ' > ' + tag + ':nth-of-type(' + index + ')';
+    }
+
+    // 记录覆盖过背景色的选择器，随下一批消息报告给 Java 端按站点缓存；规则按主框架的站点缓存，只有主框架报告
+    const reported = new Set();
+    // 站点已经缓存的选择器，不再重复报告
+    const cached = new Set();
+    let report = { light: [], selected: [] };
+
+    function record(element, kind) {
+        if (reported.size >= MAX_REPORTED || !runtime.config.mainFrame) {
+            return;
+        }
+        const selector = selectorOf(element, 0);
+        if (!selector || reported.has(selector) || cached.has(selector) || !isValidSelector(selector)) {
+            return;
+        }
+        reported.add(selector);
+        report[kind].push(selector);
+        runtime.reportLater();
+    }
+
+    runtime.addReporter(() => {
+        if (report.light.length > 0 || report.selected.length > 0) {
+            runtime.post('theme', report);
+            report = { light: [], selected: [] };
+        }
+    });
+
+    // 读取阶段：检查候选元素的背景色，需要修改的元素放到写入阶段统一加类名
+    function classifyAll(elements, writes) {
+        const results = elements.map(element =>
+            element.isConnected ? classify(getComputedStyle(element).backgroundColor) : null);
+        writes.push(() => {
+            let darkened = 0;
+            elements.forEach((element, i) => {
+                if (results[i] === 'light') {
+                    record(element, 'light');
+                    element.classList.add(DARK_BG_CLASS);
+                    darkened++;
+                } else if (results[i] === 'selected') {
+                    record(element, 'selected');
+                    element.classList.add(SELECTED_BG_CLASS);
+                    darkened++;
+                }
+            });
+            if (darkened > 0) {
+                runtime.count('darkened', darkened);
+            }
+        });
+    }
+
+    // 样式表已经生效，移除地址变化时添加的遮罩
+    function removeMask() {
+        const mask = document.getElementById('loading-mask');
+        if (mask) {
+            mask.remove();
+        }
+    }
+
+    let enabled = false;
+    let registered = false;
+
+    // 站点缓存的选择器已经由样式表覆盖，不再报告，对应的元素也不再检查
+    function useCached(selectors) {
+        const valid = (selectors || []).filter(isValidSelector);
+        valid.forEach(selector => cached.add(selector));
+        cachedMatcher = valid.length > 0 ? valid.join(', ') : null;
+    }
+
+    // 开始使用深色主题。rules 是站点缓存的规则，开始加载时已经注入样式表的为空；selectors 是这些规则的选择器。
+    // 缓存的规则来自同一站点的其他页面，这个页面仍然在空闲时间检查一遍，只跳过规则已经覆盖的元素
+    function enable(rules, selectors) {
+        enabled = true;
+        runtime.time('dark', () => {
+            ensureStyle(rules);
+            useCached(selectors);
+        });
+        // 已经检查过的元素保留了类名，这里只会收集新的候选元素
+        runtime.defer('dark', () => {
+            if (!enabled || !document.body) {
+                return;
+            }
+            const initial = collect(document.body, MAX_INITIAL_CANDIDATES);
+            for (let i = 0; i < initial.length; i += BATCH_SIZE) {
+                const batch = initial.slice(i, i + BATCH_SIZE);
+                runtime.defer('dark', writes => {
+                    if (enabled) {
+                        classifyAll(batch, writes);
+                    }
+                });
+            }
+        });
+        // 处理器第一次启用时才登记，深色模式关闭的页面不监听 DOM 变化
+        if (!registered) {
+            registered = true;
+            runtime.register('dark', (root, writes) => {
+                const candidates = enabled ? collect(root, MAX_MUTATION_CANDIDATES) : [];
+                if (candidates.length > 0) {
+                    classifyAll(candidates, writes);
+                }
+            });
+        }
+        removeMask();
+        requestAnimationFrame(removeMask);
+    }
+
+    // 移除样式表即可恢复原样，元素上的类名只在样式表中有定义
+    function disable() {
+        enabled = false;
+        removeStyle();
+        removeMask();
+    }
+
+    runtime.onConfig(update => {
+        if (update.darkMode === true && !enabled) {
+            enable(update.darkRules, update.themeSelectors);
+        } else if (update.darkMode === false && enabled) {
+            disable();
+        }
+    });
+
+    if (runtime.config.darkMode) {
+        enable(runtime.config.darkRules, runtime.config.themeSelectors);
+    } else {
+        // 开始加载时注入的样式表已经过时
+        removeStyle();
+    }
+})();
@@ -0,0 +1,22 @@
+// 页面开始加载时执行：文档根节点一出现就插入样式表，页面第一帧就是深色的
+(function (styleId, css) {
+    if (document.getElementById(styleId)) {
+        return;
+    }
+    function inject() {
+        const style = document.createElement('style');
+        style.id = styleId;
+        style.textContent = css;
+        document.documentElement.appendChild(style);
+    }
+    if (document.documentElement) {
+        inject();
+    } else {
+        new MutationObserver((mutations, observer) => {
+            if (document.documentElement) {
+                observer.disconnect();
+                inject();
+            }
+        }).observe(document, { childList: true });
+    }
+})
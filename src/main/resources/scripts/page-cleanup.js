@@ -0,0 +1,69 @@
+// 页面元素处理和深色主题一起启用：深色模式第一次打开时开始，移除的元素关闭深色模式后不会恢复。
+
+// ==================== 广告元素移除 ====================
+(function () {
+    // 已经注入过
+    if (!runtime) {
+        return;
+    }
+    // 已知的广告元素，合并成一个选择器，每个节点只匹配一次
+    const AD_SELECTOR = [
+        '.ad, .ads',
+        '.advertisement',
+        '.ad-container',
+        '.ad-slot',
+        '.ad-unit',
+        '.ad-wrapper',
+        '[id^="google_ads"]', // Google Ads
+        '[class^="ad-"]',
+        '[class*="ad-"]',
+        '[id^="ad-"]',
+        '[id*="ad-"]',
+        '[data-ad-id]',
+        '[data-google-query-id]'
+    ].join(', ');
+
+    runtime.whenDark(() => {
+        runtime.time('ads', () => {
+            const found = document.querySelectorAll(AD_SELECTOR);
+            found.forEach(element => element.remove());
+            runtime.count('adsRemoved', found.length);
+        });
+
+        runtime.register('ads', (root, writes) => {
+            if (!runtime.config.darkMode) {
+                return;
+            }
+            const found = root.matches(AD_SELECTOR) ? [root] : root.querySelectorAll(AD_SELECTOR);
+            if (found.length > 0) {
+                writes.push(() => {
+                    found.forEach(element => element.remove());
+                    runtime.count('adsRemoved', found.length);
+                });
+            }
+        });
+    });
+})();
+
+// ==================== 移除链接的 target="_blank" ====================
+(function () {
+    if (!runtime) {
+        return;
+    }
+
+    runtime.whenDark(() => {
+        runtime.time('links', () =>
+            document.querySelectorAll('a[target="_blank"]').forEach(link => link.removeAttribute('target')));
+
+        runtime.register('links', (root, writes) => {
+            if (!runtime.config.darkMode) {
+                return;
+            }
+            const links = root.tagName === 'A' && root.target === '_blank'
+                ? [root] : root.querySelectorAll('a[target="_blank"]');
+            if (links.length > 0) {
+                writes.push(() => links.forEach(link => link.removeAttribute('target')));
+            }
+        });
+    });
+})();
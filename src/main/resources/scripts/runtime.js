@@ -0,0 +1,322 @@
+// ==================== 共享的 DOM 变化调度器 ====================
+// 全页只有一个 MutationObserver：新增节点先入队去重，再在空闲时间按帧预算分批交给各个处理器。
+// 每批先执行所有处理器的读取阶段，再统一执行收集到的写入操作，避免读写交错引起反复的样式重算。
+// 每个框架（包括跨域 iframe）由 Java 端各自注入一份，只处理自己的文档。
+// 与 Java 端的通信都是 { type, data } 形式的消息：发给 Java 的消息合并成一批，通过 Java 端注入的发送函数发送；
+// Java 发来的消息交给 receive，配置更新不需要重新加载页面，并逐层转发给子框架。
+// 三个脚本拼在同一个函数里注入（见 PageScripts.BUNDLE），配置 initialConfig、带令牌的发送函数 postBatch 和
+// 接收令牌 receiveToken 是这个函数的参数；runtime 只在函数内部可见，页面里的其他脚本拿不到。
+const runtime = (function () {
+    // 页面上唯一的全局入口：Java 端带着接收令牌调用，令牌不对的调用被忽略。不可改写，同时标记已经注入过
+    if (Object.getOwnPropertyDescriptor(window, '__ideaBrowserReceive')) {
+        return null;
+    }
+    Object.defineProperty(window, '__ideaBrowserReceive', {
+        value: (token, message) => {
+            if (token === receiveToken) {
+                receive(message);
+            }
+        }
+    });
+    const config = Object.assign({ frameBudgetMs: 8, reportDelayMs: 3000, mainFrame: true, darkMode: false },
+        initialConfig);
+    // 只对当前框架的文档有效的配置，转发给子框架时去掉
+    const FRAME_LOCAL = ['darkRules', 'themeSelectors'];
+    // 处理器按名字登记，耗时按名字统计
+    const processors = [];
+    // 待处理的元素节点，或者通过 defer 追加的一次性任务
+    const queue = [];
+    const queued = new Set();
+    let scheduled = false;
+    let observing = false;
+
+    // ---------- 发给 Java 端的消息：延迟一段时间，连同各部分累计的数据合并成一批发送 ----------
+    let outbox = [];
+    let reportTimer = 0;
+    // 发送前调用，把各自累计的数据追加到这一批消息中
+    const reporters = [];
+    // 配置更新的监听器
+    const configListeners = [];
+
+    function post(type, data) {
+        outbox.push({ type: type, data: data });
+        reportLater();
+    }
+
+    function reportLater() {
+        if (!reportTimer && postBatch) {
+            reportTimer = setTimeout(report, config.reportDelayMs);
+        }
+    }
+
+    function report() {
+        reporters.forEach(reporter => reporter());
+        clearTimeout(reportTimer);
+        reportTimer = 0;
+        if (outbox.length > 0) {
+            const batch = outbox;
+            outbox = [];
+            postBatch(JSON.stringify(batch));
+        }
+        if (!navigationReported) {
+            reportLater();
+        }
+    }
+
+    // ---------- 性能统计：按名字累计耗时和计数，随下一批消息报告 ----------
+    let timings = {};
+    let counters = {};
+    // 导航计时只由主框架报告
+    let navigationReported = !config.mainFrame;
+
+    // 导航计时在页面 load 事件结束后才完整
+    function navigationTiming() {
+        const entry = performance.getEntriesByType('navigation')[0];
+        if (!entry || entry.loadEventEnd <= 0) {
+            return null;
+        }
+        const result = {
+            dns: entry.domainLookupEnd - entry.domainLookupStart,
+            connect: entry.connectEnd - entry.connectStart,
+            ttfb: entry.responseStart - entry.requestStart,
+            download: entry.responseEnd - entry.responseStart,
+            domInteractive: entry.domInteractive,
+            domContentLoaded: entry.domContentLoadedEventEnd,
+            load: entry.loadEventEnd,
+            transferSize: entry.transferSize
+        };
+        performance.getEntriesByType('paint').forEach(paint => result[paint.name] = paint.startTime);
+        return result;
+    }
+
+    reporters.push(() => {
+        const metrics = { timings: timings, counters: counters };
+        if (!navigationReported) {
+            metrics.navigation = navigationTiming();
+            navigationReported = metrics.navigation !== null;
+        }
+        if (metrics.navigation || Object.keys(timings).length > 0 || Object.keys(counters).length > 0) {
+            outbox.push({ type: 'metrics', data: metrics });
+        }
+        timings = {};
+        counters = {};
+    });
+
+    // ---------- 主框架的滚动位置：滚动后随下一批消息报告，用于重启后恢复会话 ----------
+    let scrolled = false;
+    if (config.mainFrame) {
+        window.addEventListener('scroll', () => {
+            scrolled = true;
+            reportLater();
+        }, { passive: true });
+        reporters.push(() => {
+            if (scrolled) {
+                scrolled = false;
+                outbox.push({ type: 'scroll', data: { x: Math.round(window.scrollX), y: Math.round(window.scrollY) } });
+            }
+        });
+    }
+
+    function time(name, fn) {
+        const start = performance.now();
+        try {
+            return fn();
+        } finally {
+            const ms = performance.now() - start;
+            const timing = timings[name] || (timings[name] = { calls: 0, totalMs: 0, maxMs: 0 });
+            timing.calls++;
+            timing.totalMs += ms;
+            timing.maxMs = Math.max(timing.maxMs, ms);
+            reportLater();
+        }
+    }
+
+    function count(name, n) {
+        counters[name] = (counters[name] || 0) + n;
+        reportLater();
+    }
+
+    function schedule() {
+        if (scheduled || queue.length === 0) {
+            return;
+        }
+        scheduled = true;
+        if (window.requestIdleCallback) {
+            requestIdleCallback(flush, { timeout: 200 });
+        } else {
+            requestAnimationFrame(() => flush(null));
+        }
+    }
+
+    // 祖先节点还在队列里时，这个节点会随祖先一起处理
+    function covered(node) {
+        for (let parent = node.parentNode; parent; parent = parent.parentNode) {
+            if (queued.has(parent)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // 写操作按处理器名字包装，写入阶段的耗时也计入对应的处理器
+    function named(name, run, writes) {
+        const own = [];
+        time(name, () => run(own));
+        own.forEach(write => writes.push(() => time(name, write)));
+    }
+
+    function flush(deadline) {
+        time('flush', () => drain(deadline));
+        schedule();
+    }
+
+    function drain(deadline) {
+        scheduled = false;
+        const budget = deadline && !deadline.didTimeout
+            ? Math.max(1, Math.min(deadline.timeRemaining(), config.frameBudgetMs))
+            : config.frameBudgetMs;
+        const start = performance.now();
+        const writes = [];
+        let index = 0;
+        let nodes = 0;
+        while (index < queue.length && performance.now() - start < budget) {
+            const item = queue[index++];
+            if (item.nodeType === undefined) {
+                named(item.name, item.run, writes);
+                continue;
+            }
+            if (!item.isConnected || covered(item)) {
+                queued.delete(item);
+                continue;
+            }
+            queued.delete(item);
+            nodes++;
+            processors.forEach(processor => named(processor.name, own => processor.run(item, own), writes));
+        }
+        queue.splice(0, index);
+        if (nodes > 0) {
+            count('nodes', nodes);
+        }
+        writes.forEach(write => write());
+    }
+
+    function enqueue(node) {
+        if (node.nodeType === Node.ELEMENT_NODE && !queued.has(node)) {
+            queued.add(node);
+            queue.push(node);
+        }
+    }
+
+    const observer = new MutationObserver(mutations => {
+        mutations.forEach(mutation => mutation.addedNodes.forEach(enqueue));
+        schedule();
+    });
+
+    // 有处理器时才监听 DOM 变化
+    function observe() {
+        if (!observing && processors.length > 0) {
+            observing = true;
+            observer.observe(document.documentElement, { childList: true, subtree: true });
+        }
+    }
+
+    // 只交给同一次注入的其他脚本
+    const api = {
+        config: config,
+        // 注册处理器：processor(root, writes) 在读取阶段处理新增的子树，写操作追加到 writes
+        register(name, processor) {
+            processors.push({ name: name, run: processor });
+            observe();
+        },
+        // 追加一个一次性任务，同样受帧预算约束，签名与处理器的读取阶段相同
+        defer(name, task) {
+            queue.push({ name: name, run: task });
+            schedule();
+        },
+        // 在统计中记录一段同步代码的耗时
+        time: time,
+        // 在统计中累加一个计数
+        count: count,
+        // 给 Java 端发一条消息，和其他消息合并成一批延迟发送
+        post: post,
+        // 安排发送下一批消息，累计的数据由 addReporter 登记的函数追加
+        reportLater: reportLater,
+        // 登记发送前调用的函数，用来把累计的数据追加到这一批消息中
+        addReporter(reporter) {
+            reporters.push(reporter);
+        },
+        // 登记配置更新的监听器，参数为这次更新的字段
+        onConfig(listener) {
+            configListeners.push(listener);
+        },
+        // 深色模式第一次打开时执行一次，已经打开时立即执行
+        whenDark(start) {
+            if (config.darkMode) {
+                start();
+                return;
+            }
+            const listener = update => {
+                if (update.darkMode === true && configListeners.includes(listener)) {
+                    configListeners.splice(configListeners.indexOf(listener), 1);
+                    start();
+                }
+            };
+            configListeners.push(listener);
+        }
+    };
+
+    // 处理 Java 端或父框架发来的消息。suspend：工具窗口隐藏时停止监听，不再处理任何 DOM 变化；
+    // resume：重新开始监听，隐藏期间错过的变化通过重新处理整个 body 补上；config：配置更新
+    function receive(message) {
+        if (!message || typeof message.type !== 'string') {
+            return;
+        }
+        if (message.type === 'suspend') {
+            observer.disconnect();
+            observing = false;
+            queue.length = 0;
+            queued.clear();
+        } else if (message.type === 'resume') {
+            observe();
+            if (observing) {
+                enqueue(document.body);
+                schedule();
+            }
+        } else if (message.type === 'config') {
+            Object.assign(config, message.data);
+            configListeners.slice().forEach(listener => listener(message.data));
+        }
+        forwardToFrames(message);
+    }
+
+    // 消息通过 postMessage 逐层传给子框架，跨域 iframe 也能收到
+    function forwardToFrames(message) {
+        if (window.frames.length === 0) {
+            return;
+        }
+        let forwarded = message;
+        if (message.data) {
+            const data = Object.assign({}, message.data);
+            FRAME_LOCAL.forEach(key => delete data[key]);
+            forwarded = { type: message.type, data: data };
+        }
+        for (let i = 0; i < window.frames.length; i++) {
+            window.frames[i].postMessage({ __ideaBrowser: forwarded }, '*');
+        }
+    }
+
+    window.addEventListener('message', event => {
+        if (event.source === window.parent && event.data && event.data.__ideaBrowser) {
+            receive(event.data.__ideaBrowser);
+        }
+    });
+
+    // 离开页面前发送剩余的消息
+    window.addEventListener('pagehide', () => {
+        if (reportTimer) {
+            report();
+        }
+    });
+    reportLater();
+    return api;
+})();
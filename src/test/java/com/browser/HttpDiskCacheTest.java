@@ -0,0 +1,238 @@
+package com.browser;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link HttpDiskCache} 的新鲜期、重新验证和 Vary 处理。网络换成按顺序返回预设响应的假实现，
+ * io 执行器直接在调用线程上执行，所有回调都是同步的。
+ */
+public class HttpDiskCacheTest {
+
+    private static final String URL = "https://docs.example.com/page";
+    private static final long DAY_MS = 24L * 60 * 60 * 1000;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final FakeNetwork network = new FakeNetwork();
+    private HttpDiskCache cache;
+
+    @Before
+    public void setUp() throws Exception {
+        cache = new HttpDiskCache(folder.getRoot().toPath(), 1024 * 1024, Runnable::run, (message, error) -> {
+            throw new AssertionError(message, error);
+        });
+        assertTrue(cache.isLoaded());
+    }
+
+    @Test
+    public void maxAgeTakesPrecedenceOverExpires() {
+        assertEquals(3_600_000, HttpDiskCache.freshnessLifetime(headers("Cache-Control", "public, max-age=3600",
+                "Expires", "Thu, 01 Jan 1970 00:00:00 GMT"), 0));
+    }
+
+    @Test
+    public void noCacheAndInvalidMaxAgeAreNeverFresh() {
+        assertEquals(0, HttpDiskCache.freshnessLifetime(headers("Cache-Control", "no-cache, max-age=3600"), 0));
+        assertEquals(0, HttpDiskCache.freshnessLifetime(headers("Cache-Control", "max-age=abc"), 0));
+        assertEquals(0, HttpDiskCache.freshnessLifetime(headers(), 0));
+    }
+
+    @Test
+    public void expiresIsRelativeToDate() {
+        assertEquals(2 * 60 * 60 * 1000, HttpDiskCache.freshnessLifetime(headers(
+                "Date", "Mon, 01 Jan 2024 10:00:00 GMT",
+                "Expires", "Mon, 01 Jan 2024 12:00:00 GMT"), 0));
+    }
+
+    @Test
+    public void lastModifiedHeuristicIsCappedAtOneDay() {
+        assertEquals(DAY_MS / 10, HttpDiskCache.freshnessLifetime(headers(
+                "Date", "Tue, 02 Jan 2024 00:00:00 GMT",
+                "Last-Modified", "Mon, 01 Jan 2024 00:00:00 GMT"), 0));
+        assertEquals(DAY_MS, HttpDiskCache.freshnessLifetime(headers(
+                "Date", "Mon, 01 Apr 2024 00:00:00 GMT",
+                "Last-Modified", "Mon, 01 Jan 2024 00:00:00 GMT"), 0));
+    }
+
+    @Test
+    public void freshResponseIsServedFromDisk() {
+        network.respond(200, headers("Cache-Control", "max-age=3600"), "fresh");
+        assertEquals(HttpDiskCache.Source.NETWORK, load(Map.of()).source());
+
+        HttpDiskCache.Response response = load(Map.of());
+        assertEquals(HttpDiskCache.Source.DISK, response.source());
+        assertArrayEquals(bytes("fresh"), response.body());
+        assertEquals(1, network.requests.size());
+    }
+
+    @Test
+    public void staleResponseIsRevalidatedWithETag() {
+        network.respond(200, headers("Cache-Control", "no-cache", "ETag", "\"v1\""), "body");
+        load(Map.of());
+        network.respond(304, headers("ETag", "\"v1\""), null);
+
+        // 页面自己带的条件请求头换成缓存的验证头
+        HttpDiskCache.Response response = load(Map.of("If-None-Match", "\"page\"", "Accept", "text/html"));
+        assertEquals(HttpDiskCache.Source.REVALIDATED, response.source());
+        assertArrayEquals(bytes("body"), response.body());
+        Map<String, String> sent = network.requests.get(1);
+        assertEquals("\"v1\"", sent.get("If-None-Match"));
+        assertEquals("text/html", sent.get("Accept"));
+    }
+
+    @Test
+    public void staleResponseIsRevalidatedWithLastModified() {
+        String lastModified = "Mon, 01 Jan 2024 00:00:00 GMT";
+        network.respond(200, headers("Cache-Control", "no-cache", "Last-Modified", lastModified), "body");
+        load(Map.of());
+        network.respond(304, headers(), null);
+
+        assertEquals(HttpDiskCache.Source.REVALIDATED, load(Map.of()).source());
+        assertEquals(lastModified, network.requests.get(1).get("If-Modified-Since"));
+        assertFalse(network.requests.get(1).containsKey("If-None-Match"));
+    }
+
+    @Test
+    public void revalidationRefreshesFreshness() {
+        network.respond(200, headers("Cache-Control", "no-cache", "ETag", "\"v1\""), "body");
+        load(Map.of());
+        network.respond(304, headers("Cache-Control", "max-age=3600"), null);
+        load(Map.of());
+
+        assertEquals(HttpDiskCache.Source.DISK, load(Map.of()).source());
+        assertEquals(2, network.requests.size());
+    }
+
+    @Test
+    public void changedResponseReplacesCachedBody() {
+        network.respond(200, headers("Cache-Control", "no-cache", "ETag", "\"v1\""), "old");
+        load(Map.of());
+        network.respond(200, headers("Cache-Control", "max-age=3600", "ETag", "\"v2\""), "new");
+        assertEquals(HttpDiskCache.Source.NETWORK, load(Map.of()).source());
+
+        HttpDiskCache.Response response = load(Map.of());
+        assertEquals(HttpDiskCache.Source.DISK, response.source());
+        assertArrayEquals(bytes("new"), response.body());
+    }
+
+    @Test
+    public void varyOnAcceptEncodingIsCached() {
+        network.respond(200, headers("Cache-Control", "max-age=3600", "Vary", "Accept-Encoding"), "body");
+        load(Map.of());
+
+        assertEquals(HttpDiskCache.Source.DISK, load(Map.of()).source());
+    }
+
+    @Test
+    public void varyOnOtherHeadersIsNotCached() {
+        network.respond(200, headers("Cache-Control", "max-age=3600", "Vary", "Accept-Encoding, Cookie"), "first");
+        load(Map.of());
+        network.respond(200, headers("Cache-Control", "max-age=3600", "Vary", "Accept-Encoding, Cookie"), "second");
+
+        HttpDiskCache.Response response = load(Map.of());
+        assertEquals(HttpDiskCache.Source.NETWORK, response.source());
+        assertArrayEquals(bytes("second"), response.body());
+    }
+
+    @Test
+    public void noStoreIsNotCached() {
+        network.respond(200, headers("Cache-Control", "no-store, max-age=3600"), "body");
+        load(Map.of());
+        network.respond(200, headers("Cache-Control", "no-store, max-age=3600"), "body");
+
+        assertEquals(HttpDiskCache.Source.NETWORK, load(Map.of()).source());
+        assertEquals(2, network.requests.size());
+    }
+
+    @Test
+    public void staleCopyIsReturnedWhenOffline() {
+        network.respond(200, headers("Cache-Control", "no-cache"), "body");
+        load(Map.of());
+        network.fail();
+
+        HttpDiskCache.Response response = load(Map.of());
+        assertEquals(HttpDiskCache.Source.OFFLINE, response.source());
+        assertArrayEquals(bytes("body"), response.body());
+    }
+
+    @Test
+    public void uncachedRequestFailsWhenOffline() {
+        network.fail();
+
+        assertNull(load(Map.of()));
+    }
+
+    @Test
+    public void bufferedHeadersDropEncodingAndHopByHopHeaders() {
+        Map<String, String> buffered = HttpDiskCache.bufferedHeaders(headers("Content-Type", "text/css",
+                "Content-Encoding", "gzip", "Content-Length", "10", "Transfer-Encoding", "chunked",
+                "Set-Cookie", "a=b", "ETag", "\"v1\""));
+        assertEquals(headers("Content-Type", "text/css", "ETag", "\"v1\""), buffered);
+    }
+
+    private HttpDiskCache.Response load(Map<String, String> requestHeaders) {
+        AtomicReference<HttpDiskCache.Response> result = new AtomicReference<>();
+        cache.load(URL, requestHeaders, null, network, result::set);
+        return result.get();
+    }
+
+    private static Map<String, String> headers(String... namesAndValues) {
+        Map<String, String> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        for (int i = 0; i < namesAndValues.length; i += 2) {
+            headers.put(namesAndValues[i], namesAndValues[i + 1]);
+        }
+        return headers;
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 按顺序返回预设的响应，记录每次请求的请求头。
+     */
+    private static final class FakeNetwork implements HttpDiskCache.Network {
+        final List<Map<String, String>> requests = new ArrayList<>();
+        private final Deque<HttpDiskCache.Response> responses = new ArrayDeque<>();
+
+        void respond(int status, Map<String, String> headers, String body) {
+            responses.add(new HttpDiskCache.Response(status, "", headers, body != null ? bytes(body) : null,
+                    HttpDiskCache.Source.NETWORK));
+        }
+
+        // 排一次失败的请求，用 headers 为 null 的响应占位
+        void fail() {
+            responses.add(new HttpDiskCache.Response(0, null, null, null, null));
+        }
+
+        @Override
+        public void fetch(String url, Map<String, String> headers, HttpDiskCache.NetworkCallback callback) {
+            requests.add(headers);
+            HttpDiskCache.Response response = responses.poll();
+            if (response == null || response.headers() == null) {
+                callback.failed("offline");
+                return;
+            }
+            callback.completed(response.status(), response.statusText(), response.headers(), response.body());
+        }
+    }
+}